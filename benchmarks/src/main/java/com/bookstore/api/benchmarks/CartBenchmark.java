@@ -0,0 +1,90 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.Customer;
+import com.bookstore.api.models.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cart and checkout paths of DataStore. Every benchmark thread shops as its own customer, so the
+// multi-threaded variants contend only on shared state: lock stripes, stock of the same books, id sequences.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CartBenchmark {
+    private static final AtomicInteger SHOPPERS = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Shopper {
+        @Param({"1", "10", "50"})
+        public int cartSize;
+
+        long customerId;
+        long[] books;
+        int next;
+
+        // A fresh customer per iteration; deleting the previous one drops its cart and order history
+        @Setup(Level.Iteration)
+        public void register(Catalog catalog) {
+            if (customerId != 0) {
+                catalog.dataStore.deleteCustomer(customerId);
+            }
+            int shopper = SHOPPERS.incrementAndGet();
+            customerId = catalog.dataStore.createCustomer(
+                    new Customer(0, "Shopper " + shopper, "shopper" + shopper + "@example.com", "secret")).getId();
+            catalog.dataStore.createCart(customerId);
+
+            SplittableRandom random = new SplittableRandom(shopper);
+            books = new long[cartSize];
+            for (int i = 0; i < cartSize; i++) {
+                books[i] = catalog.bookIds[random.nextInt(catalog.bookIds.length)];
+            }
+            next = 0;
+        }
+    }
+
+    // Adds one line per call, cycling over cartSize books, so the cart holds at most cartSize lines
+    @Benchmark
+    public void addToCart(Catalog catalog, Shopper shopper) {
+        long bookId = shopper.books[shopper.next++ % shopper.books.length];
+        catalog.dataStore.addToCart(shopper.customerId, new CartItem(bookId, 1));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void addToCartContended(Catalog catalog, Shopper shopper) {
+        addToCart(catalog, shopper);
+    }
+
+    // Fills the cart with cartSize lines and checks it out
+    @Benchmark
+    public Order createOrder(Catalog catalog, Shopper shopper) {
+        for (long bookId : shopper.books) {
+            catalog.dataStore.addToCart(shopper.customerId, new CartItem(bookId, 1));
+        }
+        return catalog.dataStore.createOrder(shopper.customerId);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Order createOrderContended(Catalog catalog, Shopper shopper) {
+        return createOrder(catalog, shopper);
+    }
+}
@@ -0,0 +1,42 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.models.Author;
+import com.bookstore.api.models.Book;
+import com.bookstore.api.storage.DataStore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Fills the DataStore singleton with catalogSize books by authors of BOOKS_PER_AUTHOR books each.
+// Every benchmark forks a fresh JVM per trial, so each parameter combination starts from the sample data.
+@State(Scope.Benchmark)
+public class Catalog {
+    public static final int BOOKS_PER_AUTHOR = 50;
+
+    // Stock high enough that checkouts never run out during a run
+    private static final int STOCK = 1_000_000_000;
+
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    public DataStore dataStore;
+    public long[] bookIds;
+    public long[] authorIds;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        dataStore = DataStore.getInstance();
+        authorIds = new long[Math.max(1, catalogSize / BOOKS_PER_AUTHOR)];
+        for (int i = 0; i < authorIds.length; i++) {
+            authorIds[i] = dataStore.createAuthor(new Author(0, "Author " + i, "Biography of author " + i)).getId();
+        }
+        bookIds = new long[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            Book book = new Book(0, "Title " + i, authorIds[i % authorIds.length],
+                    String.format("978-%010d", i), 1950 + i % 70, 5 + i % 50, STOCK);
+            bookIds[i] = dataStore.createBook(book).getId();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.models.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Read paths behind GET /books and GET /authors/{id}/books
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogReadBenchmark {
+
+    @State(Scope.Thread)
+    public static class Reader {
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void seed() {
+            random = new SplittableRandom(Thread.currentThread().getId());
+        }
+
+        long anyAuthor(Catalog catalog) {
+            return catalog.authorIds[random.nextInt(catalog.authorIds.length)];
+        }
+
+        long anyBook(Catalog catalog) {
+            return catalog.bookIds[random.nextInt(catalog.bookIds.length)];
+        }
+    }
+
+    @Benchmark
+    public List<Book> getBooksByAuthor(Catalog catalog, Reader reader) {
+        return catalog.dataStore.getBooksByAuthor(reader.anyAuthor(catalog));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<Book> getBooksByAuthorContended(Catalog catalog, Reader reader) {
+        return getBooksByAuthor(catalog, reader);
+    }
+
+    // The lookup behind GET /books/{id}
+    @Benchmark
+    public Book getBook(Catalog catalog, Reader reader) {
+        return catalog.dataStore.getBook(reader.anyBook(catalog));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Book getBookContended(Catalog catalog, Reader reader) {
+        return getBook(catalog, reader);
+    }
+
+    // Copies the whole catalog, as the unpaged endpoint used to
+    @Benchmark
+    public List<Book> getAllBooks(Catalog catalog) {
+        return catalog.dataStore.getAllBooks();
+    }
+
+    // One default-sized page of GET /books starting at a random book
+    @Benchmark
+    public List<Book> getBooksPage(Catalog catalog, Reader reader) {
+        return catalog.dataStore.getBooks(reader.anyBook(catalog), 100);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<Book> getBooksPageContended(Catalog catalog, Reader reader) {
+        return getBooksPage(catalog, reader);
+    }
+}
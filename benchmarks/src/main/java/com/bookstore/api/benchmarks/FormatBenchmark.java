@@ -0,0 +1,126 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.Cart;
+import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.Order;
+import com.bookstore.api.models.OrderItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Wire formats a client can negotiate: JSON, JSON with gzip Content-Encoding and CBOR (Accept: application/cbor).
+// Encoding includes compression and decoding decompression, as the server and client each pay for it per
+// response. The encoded sizes are printed at setup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+    @Param({"json", "json-gzip", "cbor"})
+    public String format;
+
+    @Param({"1", "10", "50"})
+    public int itemCount;
+
+    private ObjectMapper mapper;
+    private boolean gzip;
+
+    private Book book;
+    private Order order;
+    private Cart cart;
+    private byte[] bookBytes;
+    private byte[] orderBytes;
+    private byte[] cartBytes;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        mapper = format.equals("cbor") ? new CBORMapper() : new ObjectMapper();
+        gzip = format.equals("json-gzip");
+
+        book = new Book(42, "The Pragmatic Programmer", 7, "978-0135957059", 2019, 39.99, 120);
+        order = new Order(1001, 3);
+        cart = new Cart(3);
+        for (int i = 0; i < itemCount; i++) {
+            order.addItem(new OrderItem(100 + i, "Title " + i, 10 + i, 1 + i % 3));
+            cart.addItem(new CartItem(100 + i, 1 + i % 3));
+        }
+        order.calculateTotal();
+
+        bookBytes = encode(book);
+        orderBytes = encode(order);
+        cartBytes = encode(cart);
+        System.out.printf("%n%s, %d items: book %d B, order %d B, cart %d B%n",
+                format, itemCount, bookBytes.length, orderBytes.length, cartBytes.length);
+    }
+
+    @Benchmark
+    public byte[] encodeBook() throws IOException {
+        return encode(book);
+    }
+
+    @Benchmark
+    public Book decodeBook() throws IOException {
+        return decode(bookBytes, Book.class);
+    }
+
+    @Benchmark
+    public byte[] encodeOrder() throws IOException {
+        return encode(order);
+    }
+
+    @Benchmark
+    public Order decodeOrder() throws IOException {
+        return decode(orderBytes, Order.class);
+    }
+
+    @Benchmark
+    public byte[] encodeCart() throws IOException {
+        return encode(cart);
+    }
+
+    @Benchmark
+    public Cart decodeCart() throws IOException {
+        return decode(cartBytes, Cart.class);
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        if (!gzip) {
+            return mapper.writeValueAsBytes(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            mapper.writeValue(out, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private <T> T decode(byte[] bytes, Class<T> type) throws IOException {
+        if (!gzip) {
+            return mapper.readValue(bytes, type);
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return mapper.readValue(in, type);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.Cart;
+import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.Order;
+import com.bookstore.api.models.OrderItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Jackson (de)serialization of the entities the API sends and receives, with the default ObjectMapper
+// configuration Jersey's JacksonFeature uses. Orders and carts carry itemCount lines.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    @Param({"1", "10", "50"})
+    public int itemCount;
+
+    private ObjectWriter bookWriter;
+    private ObjectWriter orderWriter;
+    private ObjectWriter cartWriter;
+    private ObjectReader bookReader;
+    private ObjectReader orderReader;
+    private ObjectReader cartReader;
+
+    private Book book;
+    private Order order;
+    private Cart cart;
+    private byte[] bookJson;
+    private byte[] orderJson;
+    private byte[] cartJson;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        bookWriter = mapper.writerFor(Book.class);
+        orderWriter = mapper.writerFor(Order.class);
+        cartWriter = mapper.writerFor(Cart.class);
+        bookReader = mapper.readerFor(Book.class);
+        orderReader = mapper.readerFor(Order.class);
+        cartReader = mapper.readerFor(Cart.class);
+
+        book = new Book(42, "The Pragmatic Programmer", 7, "978-0135957059", 2019, 39.99, 120);
+        order = new Order(1001, 3);
+        cart = new Cart(3);
+        for (int i = 0; i < itemCount; i++) {
+            order.addItem(new OrderItem(100 + i, "Title " + i, 10 + i, 1 + i % 3));
+            cart.addItem(new CartItem(100 + i, 1 + i % 3));
+        }
+        order.calculateTotal();
+
+        bookJson = bookWriter.writeValueAsBytes(book);
+        orderJson = orderWriter.writeValueAsBytes(order);
+        cartJson = cartWriter.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] serializeBook() throws IOException {
+        return bookWriter.writeValueAsBytes(book);
+    }
+
+    @Benchmark
+    public Book deserializeBook() throws IOException {
+        return bookReader.readValue(bookJson);
+    }
+
+    @Benchmark
+    public byte[] serializeOrder() throws IOException {
+        return orderWriter.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public Order deserializeOrder() throws IOException {
+        return orderReader.readValue(orderJson);
+    }
+
+    @Benchmark
+    public byte[] serializeCart() throws IOException {
+        return cartWriter.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public Cart deserializeCart() throws IOException {
+        return cartReader.readValue(cartJson);
+    }
+}
@@ -0,0 +1,288 @@
+package com.bookstore.api.benchmarks;
+
+import com.bookstore.api.Main;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop HTTP load generator. Requests are issued at a fixed arrival rate regardless of how fast the
+// server answers, and each latency is measured from the time the request was scheduled to go out, not from
+// when it was actually sent. A stalled server therefore shows up in the percentiles instead of silently
+// lowering the request rate (coordinated omission).
+//
+// Usage: java -cp target/benchmarks.jar com.bookstore.api.benchmarks.LoadTest [key=value ...]
+//   rate=2000        requests per second
+//   duration=30      measured seconds
+//   warmup=10        seconds of load before measuring
+//   mix=shop         browse | shop | checkout
+//   customers=1000   customers created before the run
+//   books=10000      books created before the run
+//   url=...          target an already running server instead of starting one in-process
+public class LoadTest {
+
+    enum Endpoint {
+        LIST_BOOKS("GET /books"),
+        GET_BOOK("GET /books/{id}"),
+        ADD_TO_CART("POST /customers/{id}/cart/items"),
+        CHECKOUT("POST /customers/{id}/orders");
+
+        final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    // Percentage of requests going to each endpoint, in Endpoint order
+    enum Mix {
+        BROWSE(60, 40, 0, 0),
+        SHOP(35, 30, 25, 10),
+        CHECKOUT(10, 10, 50, 30);
+
+        final int[] weights;
+
+        Mix(int... weights) {
+            this.weights = weights;
+        }
+
+        Endpoint pick(SplittableRandom random) {
+            int roll = random.nextInt(100);
+            for (Endpoint endpoint : Endpoint.values()) {
+                roll -= weights[endpoint.ordinal()];
+                if (roll < 0) {
+                    return endpoint;
+                }
+            }
+            return Endpoint.LIST_BOOKS;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String baseUri;
+    private final HttpClient client;
+    private final Map<Endpoint, Recorder> recorders = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private long[] bookIds;
+    private long[] customerIds;
+
+    LoadTest(String baseUri) {
+        this.baseUri = baseUri.endsWith("/") ? baseUri : baseUri + "/";
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Endpoint endpoint : Endpoint.values()) {
+            // Latencies in microseconds, auto-resizing, 3 significant digits
+            recorders.put(endpoint, new Recorder(3));
+            errors.put(endpoint, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        int rate = Integer.parseInt(options.getOrDefault("rate", "2000"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        Mix mix = Mix.valueOf(options.getOrDefault("mix", "shop").toUpperCase());
+        int customers = Integer.parseInt(options.getOrDefault("customers", "1000"));
+        int books = Integer.parseInt(options.getOrDefault("books", "10000"));
+
+        HttpServer server = null;
+        String url = options.get("url");
+        if (url == null) {
+            server = Main.startServer();
+            url = Main.BASE_URI;
+        }
+        try {
+            LoadTest test = new LoadTest(url);
+            test.populate(books, customers);
+            System.out.printf("Warming up for %d s at %d req/s (%s mix)%n", warmup, rate, mix.name().toLowerCase());
+            test.run(mix, rate, warmup, false);
+            System.out.printf("Measuring for %d s%n", duration);
+            Map<Endpoint, Histogram> results = test.run(mix, rate, duration, true);
+            test.report(results, duration);
+        } finally {
+            if (server != null) {
+                server.shutdownNow();
+            }
+        }
+    }
+
+    // Creates an author, books with enough stock that checkouts never run out, and customers
+    private void populate(int books, int customers) throws IOException, InterruptedException {
+        long authorId = post("authors", "{\"name\":\"Load Test Author\",\"biography\":\"Generated\"}").get("id").asLong();
+        bookIds = new long[books];
+        for (int i = 0; i < books; i++) {
+            String book = String.format("{\"title\":\"Load Test Book %d\",\"authorId\":%d,\"isbn\":\"978-%010d\","
+                    + "\"publicationYear\":2000,\"price\":%d.99,\"stock\":1000000000}", i, authorId, i, 5 + i % 40);
+            bookIds[i] = post("books", book).get("id").asLong();
+        }
+        customerIds = new long[customers];
+        for (int i = 0; i < customers; i++) {
+            String customer = String.format("{\"name\":\"Load Test Customer %d\",\"email\":\"load%d@example.com\","
+                    + "\"password\":\"secret\"}", i, i);
+            customerIds[i] = post("customers", customer).get("id").asLong();
+        }
+        System.out.printf("Created %d books and %d customers%n", books, customers);
+    }
+
+    // Issues requests at the given rate for the given time; returns the histograms if measuring
+    private Map<Endpoint, Histogram> run(Mix mix, int rate, int seconds, boolean measure) {
+        Map<Endpoint, Histogram> totals = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            // Discard anything recorded before this run
+            recorders.get(endpoint).getIntervalHistogram();
+            errors.get(endpoint).reset();
+            totals.put(endpoint, new Histogram(3));
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * intervalNanos;
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            send(mix.pick(random), random, intended);
+
+            if (now >= nextReport) {
+                nextReport += REPORT_INTERVAL_NANOS;
+                Histogram interval = drain(totals);
+                System.out.printf("  %3d s: %6d responses, p99 %8.2f ms, %d in flight%n",
+                        TimeUnit.NANOSECONDS.toSeconds(now - start), interval.getTotalCount(),
+                        interval.getValueAtPercentile(99) / 1000.0, inFlight.get());
+            }
+        }
+
+        // Let outstanding requests finish so their latencies are counted
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        drain(totals);
+        return measure ? totals : null;
+    }
+
+    // Moves everything recorded since the last drain into the totals; returns the combined interval
+    private Histogram drain(Map<Endpoint, Histogram> totals) {
+        Histogram interval = new Histogram(3);
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = recorders.get(endpoint).getIntervalHistogram();
+            totals.get(endpoint).add(histogram);
+            interval.add(histogram);
+        }
+        return interval;
+    }
+
+    private void send(Endpoint endpoint, SplittableRandom random, long intendedNanos) {
+        long customerId = customerIds[random.nextInt(customerIds.length)];
+        long bookId = bookIds[random.nextInt(bookIds.length)];
+        HttpRequest request;
+        switch (endpoint) {
+            case LIST_BOOKS:
+                // Pages start anywhere in the catalog, as with clients following next links
+                request = get("books?after=" + (bookId - 1) + "&limit=20");
+                break;
+            case GET_BOOK:
+                request = get("books/" + bookId);
+                break;
+            case ADD_TO_CART:
+                request = postRequest("customers/" + customerId + "/cart/items",
+                        "{\"bookId\":" + bookId + ",\"quantity\":1}");
+                break;
+            default:
+                request = postRequest("customers/" + customerId + "/orders", "");
+                break;
+        }
+
+        inFlight.incrementAndGet();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedNanos);
+            recorders.get(endpoint).recordValue(micros);
+            // Checking out an empty cart (404) is expected with random customers and is not an error
+            boolean expected = endpoint == Endpoint.CHECKOUT && response != null && response.statusCode() == 404;
+            if (failure != null || (response.statusCode() >= 400 && !expected)) {
+                errors.get(endpoint).increment();
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private void report(Map<Endpoint, Histogram> results, int seconds) {
+        System.out.println();
+        System.out.printf("%-32s %10s %10s %8s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Histogram all = new Histogram(3);
+        long allErrors = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = results.get(endpoint);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            long errorCount = errors.get(endpoint).sum();
+            printRow(endpoint.label, histogram, errorCount, seconds);
+            all.add(histogram);
+            allErrors += errorCount;
+        }
+        printRow("all", all, allErrors, seconds);
+    }
+
+    private static void printRow(String label, Histogram histogram, long errorCount, int seconds) {
+        System.out.printf("%-32s %10d %10.0f %8d %10.2f %10.2f %10.2f %10.2f%n",
+                label, histogram.getTotalCount(), histogram.getTotalCount() / (double) seconds, errorCount,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUri + path)).GET().build();
+    }
+
+    private HttpRequest postRequest(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUri + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private JsonNode post(String path, String json) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(postRequest(path, json), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IOException("POST " + path + " failed with " + response.statusCode() + ": " + response.body());
+        }
+        return MAPPER.readTree(response.body());
+    }
+}
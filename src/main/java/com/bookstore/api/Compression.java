@@ -0,0 +1,69 @@
+package com.bookstore.api;
+
+import org.glassfish.grizzly.http.CompressionConfig;
+import org.glassfish.grizzly.http.server.NetworkListener;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+// Response compression on the Grizzly listeners, from system properties:
+//   bookstore.compression            on (default) or off
+//   bookstore.compression.min.bytes  smallest body compressed, default 2048; smaller ones gain little and cost
+//                                    a deflater per response
+// Grizzly negotiates gzip (and lzma) from Accept-Encoding and compresses JSON, NDJSON and text bodies only;
+// CBOR is already compact and usually sent between services on a fast network.
+final class Compression {
+    static final String PROPERTY = "bookstore.compression";
+    static final String MIN_BYTES_PROPERTY = "bookstore.compression.min.bytes";
+    static final int DEFAULT_MIN_BYTES = 2048;
+
+    private static final String[] MIME_TYPES = {"application/json", "application/x-ndjson", "text/plain"};
+
+    private Compression() {}
+
+    static boolean enabledFromSystemProperties() {
+        String mode = System.getProperty(PROPERTY, "on").trim().toLowerCase();
+        if (!mode.equals("on") && !mode.equals("off")) {
+            throw new IllegalArgumentException("Unknown " + PROPERTY + " '" + mode + "', expected on or off");
+        }
+        return mode.equals("on");
+    }
+
+    static void configure(NetworkListener listener, boolean enabled) {
+        CompressionConfig config = listener.getCompressionConfig();
+        if (!enabled) {
+            config.setCompressionMode(CompressionConfig.CompressionMode.OFF);
+            return;
+        }
+        int minBytes = Integer.getInteger(MIN_BYTES_PROPERTY, DEFAULT_MIN_BYTES);
+        if (minBytes < 0) {
+            throw new IllegalArgumentException(MIN_BYTES_PROPERTY + " must not be negative, got " + minBytes);
+        }
+        config.setCompressionMode(CompressionConfig.CompressionMode.ON);
+        config.setCompressionMinSize(minBytes);
+        config.setCompressibleMimeTypes(MIME_TYPES);
+    }
+
+    // Grizzly leaves Vary alone, so shared caches would hand a gzip body to clients that never asked for one
+    static final class VaryFilter implements ContainerResponseFilter {
+        @Override
+        public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+            MediaType type = response.getMediaType();
+            if (type != null && isCompressible(type)) {
+                response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+        }
+
+        private static boolean isCompressible(MediaType type) {
+            for (String mimeType : MIME_TYPES) {
+                if (type.isCompatible(MediaType.valueOf(mimeType))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
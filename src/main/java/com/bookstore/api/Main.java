@@ -1,16 +1,34 @@
 package com.bookstore.api;
 
+import org.glassfish.jersey.message.filtering.SelectableEntityFilteringFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.util.concurrent.ExecutorService;
 import com.bookstore.api.resources.*;
 import com.bookstore.api.exceptions.*;
+import com.bookstore.api.metrics.RequestMetricsFeature;
+import com.bookstore.api.storage.DataStore;
 
 public class Main {
     public static final String BASE_URI = "http://localhost:8080/BookstoreAPI/api/";
 
+    // Milliseconds from the start of startServer() until the server accepts requests
+    private static volatile long readyMillis;
+
+    // Executor running resource methods: "platform" or "virtual", see WorkerPools
+    private static volatile String executionMode = WorkerPools.PLATFORM;
+
     public static HttpServer startServer() {
+        final long started = System.nanoTime();
+        // Loads persisted state before the server starts accepting requests
+        final DataStore dataStore = DataStore.getInstance();
+
         final ResourceConfig rc = new ResourceConfig()
                 .packages("com.bookstore.api")
                 .register(BookResource.class)
@@ -18,14 +36,63 @@ public class Main {
                 .register(CustomerResource.class)
                 .register(CartResource.class)
                 .register(OrderResource.class)
+                .register(MetricsResource.class)
                 .register(BookNotFoundExceptionMapper.class)
                 .register(AuthorNotFoundExceptionMapper.class)
                 .register(CustomerNotFoundExceptionMapper.class)
                 .register(InvalidInputExceptionMapper.class)
                 .register(OutOfStockExceptionMapper.class)
-                .register(CartNotFoundExceptionMapper.class);
+                .register(CartNotFoundExceptionMapper.class)
+                .register(ServiceBusyExceptionMapper.class)
+                .register(PreconditionFailedExceptionMapper.class)
+                // Shared with the response cache, which encodes JSON itself
+                .register(JsonMapperResolver.class)
+                // Cached JSON of GET /books/{id} and /authors/{id}/books
+                .register(PreEncodedJsonWriter.class)
+                // Accept: application/cbor on books, carts and orders
+                .register(CborProvider.class)
+                // Per-method latency histograms and response counts, exposed on /metrics
+                .register(RequestMetricsFeature.class)
+                // Field projection, e.g. GET /books?fields=id,title
+                .register(SelectableEntityFilteringFeature.class)
+                .property(SelectableEntityFilteringFeature.QUERY_PARAM_NAME, "fields");
+
+        final boolean compression = Compression.enabledFromSystemProperties();
+        if (compression) {
+            rc.register(new Compression.VaryFilter());
+        }
+
+        final String mode = WorkerPools.modeFromSystemProperties();
+        final ExecutorService workers = WorkerPools.create(mode);
+        if (workers != null) {
+            rc.register(new WorkerPools.ShutdownListener(workers));
+        }
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc, false);
+        for (NetworkListener listener : server.getListeners()) {
+            if (workers != null) {
+                listener.getTransport().setWorkerThreadPool(workers);
+            }
+            Compression.configure(listener, compression);
+        }
+        try {
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start server at " + BASE_URI, e);
+        }
+        executionMode = mode;
+
+        readyMillis = (System.nanoTime() - started) / 1_000_000;
+        System.out.println(String.format("Ready in %d ms (data store recovery %d ms, JVM uptime %d ms, %s threads)",
+                readyMillis, dataStore.getRecoveryMillis(), ManagementFactory.getRuntimeMXBean().getUptime(), mode));
+        return server;
+    }
+
+    public static String getExecutionMode() {
+        return executionMode;
+    }
 
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+    public static long getReadyMillis() {
+        return readyMillis;
     }
 
     public static void main(String[] args) throws Exception {
@@ -33,5 +100,6 @@ public class Main {
         System.out.println(String.format("Bookstore API started at %s\nHit enter to stop it...", BASE_URI));
         System.in.read();
         server.stop();
+        DataStore.getInstance().close();
     }
 }
\ No newline at end of file
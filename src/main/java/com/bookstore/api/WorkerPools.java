@@ -0,0 +1,66 @@
+package com.bookstore.api;
+
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Selects the executor that runs Jersey resource methods, from the bookstore.executor system property:
+//   platform  Grizzly's default worker thread pool (default)
+//   virtual   a new virtual thread per request; requires Java 21 or newer at runtime
+// The virtual thread executor is looked up reflectively so the code still compiles for Java 11.
+final class WorkerPools {
+    static final String PROPERTY = "bookstore.executor";
+    static final String PLATFORM = "platform";
+    static final String VIRTUAL = "virtual";
+
+    private WorkerPools() {}
+
+    static String modeFromSystemProperties() {
+        String mode = System.getProperty(PROPERTY, PLATFORM).trim().toLowerCase();
+        if (!mode.equals(PLATFORM) && !mode.equals(VIRTUAL)) {
+            throw new IllegalArgumentException("Unknown " + PROPERTY + " '" + mode + "', expected platform or virtual");
+        }
+        return mode;
+    }
+
+    // Returns the executor for the mode, or null to keep Grizzly's own worker pool
+    static ExecutorService create(String mode) {
+        if (!mode.equals(VIRTUAL)) {
+            return null;
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(PROPERTY + "=virtual requires Java 21 or newer, running on Java "
+                    + Runtime.version().feature());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create a virtual thread executor", e);
+        }
+    }
+
+    // Grizzly leaves a worker pool it did not create running when the server shuts down. Jersey shuts the
+    // container down after the listeners stop accepting requests, so the executor is closed from there.
+    static final class ShutdownListener implements ContainerLifecycleListener {
+        private final ExecutorService workers;
+
+        ShutdownListener(ExecutorService workers) {
+            this.workers = workers;
+        }
+
+        @Override
+        public void onStartup(Container container) {
+        }
+
+        @Override
+        public void onReload(Container container) {
+        }
+
+        @Override
+        public void onShutdown(Container container) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package com.bookstore.api.exceptions;
 
+import com.bookstore.api.metrics.Metrics;
+
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
 
 @Provider
 public class CartNotFoundExceptionMapper implements ExceptionMapper<CartNotFoundException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(CartNotFoundExceptionMapper.class);
+
     @Override
     public Response toResponse(CartNotFoundException exception) {
+        ERRORS.increment();
         ExceptionResponse response = new ExceptionResponse("Cart Not Found", exception.getMessage());
         return Response.status(Response.Status.NOT_FOUND)
                 .entity(response)
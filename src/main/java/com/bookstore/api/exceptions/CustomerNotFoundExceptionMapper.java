@@ -1,14 +1,20 @@
 package com.bookstore.api.exceptions;
 
+import com.bookstore.api.metrics.Metrics;
+
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
 
 @Provider
 public class CustomerNotFoundExceptionMapper implements ExceptionMapper<CustomerNotFoundException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(CustomerNotFoundExceptionMapper.class);
+
     @Override
     public Response toResponse(CustomerNotFoundException exception) {
+        ERRORS.increment();
         ExceptionResponse response = new ExceptionResponse("Customer Not Found", exception.getMessage());
         return Response.status(Response.Status.NOT_FOUND)
                 .entity(response)
@@ -1,14 +1,20 @@
 package com.bookstore.api.exceptions;
 
+import com.bookstore.api.metrics.Metrics;
+
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
 
 @Provider
 public class InvalidInputExceptionMapper implements ExceptionMapper<InvalidInputException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(InvalidInputExceptionMapper.class);
+
     @Override
     public Response toResponse(InvalidInputException exception) {
+        ERRORS.increment();
         ExceptionResponse response = new ExceptionResponse("Invalid Input", exception.getMessage());
         return Response.status(Response.Status.BAD_REQUEST)
                 .entity(response)
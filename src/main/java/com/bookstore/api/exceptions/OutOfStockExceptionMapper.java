@@ -1,14 +1,20 @@
 package com.bookstore.api.exceptions;
 
+import com.bookstore.api.metrics.Metrics;
+
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
 
 @Provider
 public class OutOfStockExceptionMapper implements ExceptionMapper<OutOfStockException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(OutOfStockExceptionMapper.class);
+
     @Override
     public Response toResponse(OutOfStockException exception) {
+        ERRORS.increment();
         ExceptionResponse response = new ExceptionResponse("Out of Stock", exception.getMessage());
         return Response.status(Response.Status.BAD_REQUEST)
                 .entity(response)
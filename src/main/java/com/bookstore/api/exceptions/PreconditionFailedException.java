@@ -0,0 +1,10 @@
+package com.bookstore.api.exceptions;
+
+// A conditional update whose If-Match did not match the current version of the entity
+public class PreconditionFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
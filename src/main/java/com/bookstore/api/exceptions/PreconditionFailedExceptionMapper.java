@@ -0,0 +1,24 @@
+package com.bookstore.api.exceptions;
+
+import com.bookstore.api.metrics.Metrics;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
+
+@Provider
+public class PreconditionFailedExceptionMapper implements ExceptionMapper<PreconditionFailedException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(PreconditionFailedExceptionMapper.class);
+
+    @Override
+    public Response toResponse(PreconditionFailedException exception) {
+        ERRORS.increment();
+        ExceptionResponse response = new ExceptionResponse("Precondition Failed", exception.getMessage());
+        return Response.status(Response.Status.PRECONDITION_FAILED)
+                .entity(response)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
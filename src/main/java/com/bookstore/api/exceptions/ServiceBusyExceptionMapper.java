@@ -0,0 +1,26 @@
+package com.bookstore.api.exceptions;
+
+import com.bookstore.api.metrics.Metrics;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+import java.util.concurrent.atomic.LongAdder;
+
+@Provider
+public class ServiceBusyExceptionMapper implements ExceptionMapper<ServiceBusyException> {
+    private static final LongAdder ERRORS = Metrics.getInstance().errorCounter(ServiceBusyExceptionMapper.class);
+
+    @Override
+    public Response toResponse(ServiceBusyException exception) {
+        ERRORS.increment();
+        ExceptionResponse response = new ExceptionResponse("Service Busy", exception.getMessage());
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+                .entity(response)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.bookstore.api.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and response counts of one resource method
+public final class EndpointMetrics {
+    private final String method;
+    private final String path;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    // Responses by status class: index 1 for 1xx through 5 for 5xx
+    private final LongAdder[] responses = new LongAdder[6];
+
+    EndpointMetrics(String method, String path) {
+        this.method = method;
+        this.path = path;
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = new LongAdder();
+        }
+    }
+
+    public void record(int status, long nanos) {
+        latency.record(nanos);
+        int statusClass = status / 100;
+        responses[(statusClass >= 1 && statusClass <= 5) ? statusClass : 5].increment();
+    }
+
+    String labels() {
+        return "method=\"" + method + "\",path=\"" + Metrics.escape(path) + "\"";
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    long getResponses(int statusClass) {
+        return responses[statusClass].sum();
+    }
+}
@@ -0,0 +1,83 @@
+package com.bookstore.api.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide registry of request metrics, rendered in the Prometheus text format.
+// Counters are created once (when Jersey binds a resource method, or when a mapper class loads)
+// and then only incremented, so recording never touches the registry maps.
+public final class Metrics {
+    private static final Metrics INSTANCE = new Metrics();
+
+    // Sorted so the exposition output is stable
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> mapperErrors = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    public EndpointMetrics endpoint(String method, String path) {
+        return endpoints.computeIfAbsent(method + " " + path, key -> new EndpointMetrics(method, path));
+    }
+
+    // Counter of responses produced by the given exception mapper
+    public LongAdder errorCounter(Class<?> mapper) {
+        return mapperErrors.computeIfAbsent(mapper.getSimpleName(), key -> new LongAdder());
+    }
+
+    public void write(StringBuilder out) {
+        out.append("# HELP bookstore_http_request_duration_seconds Latency of each resource method\n");
+        out.append("# TYPE bookstore_http_request_duration_seconds histogram\n");
+        for (EndpointMetrics endpoint : endpoints.values()) {
+            endpoint.getLatency().write(out, "bookstore_http_request_duration_seconds", endpoint.labels());
+        }
+
+        out.append("# HELP bookstore_http_responses_total Responses of each resource method by status class\n");
+        out.append("# TYPE bookstore_http_responses_total counter\n");
+        for (EndpointMetrics endpoint : endpoints.values()) {
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                long count = endpoint.getResponses(statusClass);
+                if (count > 0) {
+                    out.append("bookstore_http_responses_total{").append(endpoint.labels())
+                            .append(",status=\"").append(statusClass).append("xx\"} ").append(count).append('\n');
+                }
+            }
+        }
+
+        out.append("# HELP bookstore_exception_mapper_errors_total Error responses produced by each exception mapper\n");
+        out.append("# TYPE bookstore_exception_mapper_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : mapperErrors.entrySet()) {
+            out.append("bookstore_exception_mapper_errors_total{mapper=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+    }
+
+    // Appends a gauge or counter with a single sample
+    public static void writeSample(StringBuilder out, String name, String type, String help, String labels, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        appendSample(out, name, labels, value);
+    }
+
+    public static void appendSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,42 @@
+package com.bookstore.api.metrics;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.ext.Provider;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+// Binds a RequestMetricsFilter to every resource method, labelled with its HTTP method and path template
+@Provider
+public class RequestMetricsFeature implements DynamicFeature {
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        Class<?> resourceClass = resourceInfo.getResourceClass();
+        Method method = resourceInfo.getResourceMethod();
+        String httpMethod = httpMethod(method);
+        if (resourceClass == null || httpMethod == null) {
+            return;
+        }
+
+        UriBuilder path = UriBuilder.fromResource(resourceClass);
+        if (method.isAnnotationPresent(Path.class)) {
+            path.path(method);
+        }
+        EndpointMetrics metrics = Metrics.getInstance().endpoint(httpMethod, path.toTemplate());
+        context.register(new RequestMetricsFilter(metrics));
+    }
+
+    private static String httpMethod(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (httpMethod != null) {
+                return httpMethod.value();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package com.bookstore.api.metrics;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+
+// Times one resource method. Bound per method by RequestMetricsFeature, so it needs no lookup per request.
+// The start time travels as a request property: suspended methods may respond on another thread, and with
+// virtual worker threads a thread-local slot would be allocated anew for every request anyway.
+final class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+
+    private final EndpointMetrics metrics;
+
+    RequestMetricsFilter(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (start == null) {
+            return;
+        }
+        metrics.record(responseContext.getStatus(), System.nanoTime() - (Long) start);
+    }
+}
@@ -1,9 +1,12 @@
 package com.bookstore.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class Author {
     private long id;
     private String name;
     private String biography;
+    private long version;
 
     // Default constructor for JSON deserialization
     public Author() {}
@@ -38,4 +41,15 @@ public class Author {
     public void setBiography(String biography) {
         this.biography = biography;
     }
-}
\ No newline at end of file
+
+    // Version stamp for ETags, set by the DataStore on every change; not part of the JSON
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
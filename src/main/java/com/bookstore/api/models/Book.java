@@ -1,13 +1,25 @@
 package com.bookstore.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongSupplier;
+
 public class Book {
+    private static final AtomicIntegerFieldUpdater<Book> STOCK =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "stock");
+    private static final AtomicLongFieldUpdater<Book> VERSION =
+            AtomicLongFieldUpdater.newUpdater(Book.class, "version");
+
     private long id;
     private String title;
     private long authorId;
     private String isbn;
     private int publicationYear;
     private double price;
-    private int stock;
+    private volatile int stock;
+    private volatile long version;
 
     // Default constructor for JSON deserialization
     public Book() {}
@@ -78,4 +90,43 @@ public class Book {
     public void setStock(int stock) {
         this.stock = stock;
     }
+
+    // Version stamp for ETags, set by the DataStore on every change; not part of the JSON
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    // Moves the version to one drawn from versions after a change made in place, such as to the stock.
+    // Drawing inside the loop keeps the version increasing when concurrent changes race.
+    public void advanceVersion(LongSupplier versions) {
+        long current;
+        long next;
+        do {
+            current = version;
+            next = versions.getAsLong();
+        } while (!VERSION.compareAndSet(this, current, next));
+    }
+
+    // Atomically takes quantity units out of stock; fails without side effects if not enough are left
+    public boolean tryReserveStock(int quantity) {
+        int current;
+        do {
+            current = stock;
+            if (current < quantity) {
+                return false;
+            }
+        } while (!STOCK.compareAndSet(this, current, current - quantity));
+        return true;
+    }
+
+    // Returns previously reserved units to stock; returns the stock before they were added
+    public int releaseStock(int quantity) {
+        return STOCK.getAndAdd(this, quantity);
+    }
 }
\ No newline at end of file
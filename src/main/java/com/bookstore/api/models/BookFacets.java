@@ -0,0 +1,90 @@
+package com.bookstore.api.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Book counts per bucket of each filter dimension. The counts of a dimension apply every other condition of the
+// filter but not its own, so they show what choosing another bucket there would return.
+public class BookFacets {
+    private long total;
+    private List<FacetCount> price = new ArrayList<>();
+    private List<FacetCount> publicationYear = new ArrayList<>();
+    private List<FacetCount> inStock = new ArrayList<>();
+    private List<FacetCount> authorId = new ArrayList<>();
+
+    // One bucket of a facet, e.g. {"value": "10-20", "count": 42}
+    public static class FacetCount {
+        private String value;
+        private long count;
+
+        // Default constructor for JSON deserialization
+        public FacetCount() {}
+
+        public FacetCount(String value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+
+    // Getters and setters
+    // Books matching the whole filter
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    // Price ranges "from-to" (from inclusive, to exclusive) and a last open range "from+"
+    public List<FacetCount> getPrice() {
+        return price;
+    }
+
+    public void setPrice(List<FacetCount> price) {
+        this.price = price;
+    }
+
+    // Decades, e.g. "1990-1999"
+    public List<FacetCount> getPublicationYear() {
+        return publicationYear;
+    }
+
+    public void setPublicationYear(List<FacetCount> publicationYear) {
+        this.publicationYear = publicationYear;
+    }
+
+    // "true" and "false"
+    public List<FacetCount> getInStock() {
+        return inStock;
+    }
+
+    public void setInStock(List<FacetCount> inStock) {
+        this.inStock = inStock;
+    }
+
+    // Authors with the most books, most first
+    public List<FacetCount> getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(List<FacetCount> authorId) {
+        this.authorId = authorId;
+    }
+}
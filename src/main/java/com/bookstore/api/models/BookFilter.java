@@ -0,0 +1,78 @@
+package com.bookstore.api.models;
+
+// Conditions of GET /books?minPrice=&maxPrice=&yearFrom=&yearTo=&inStock=&authorId=; null means no condition.
+// Price and year bounds are inclusive.
+public class BookFilter {
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private Boolean inStock;
+    private Long authorId;
+
+    public BookFilter() {}
+
+    public BookFilter(Double minPrice, Double maxPrice, Integer yearFrom, Integer yearTo, Boolean inStock,
+                      Long authorId) {
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.yearFrom = yearFrom;
+        this.yearTo = yearTo;
+        this.inStock = inStock;
+        this.authorId = authorId;
+    }
+
+    public boolean isEmpty() {
+        return minPrice == null && maxPrice == null && yearFrom == null && yearTo == null && inStock == null
+                && authorId == null;
+    }
+
+    // Getters and setters
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public Integer getYearFrom() {
+        return yearFrom;
+    }
+
+    public void setYearFrom(Integer yearFrom) {
+        this.yearFrom = yearFrom;
+    }
+
+    public Integer getYearTo() {
+        return yearTo;
+    }
+
+    public void setYearTo(Integer yearTo) {
+        this.yearTo = yearTo;
+    }
+
+    public Boolean getInStock() {
+        return inStock;
+    }
+
+    public void setInStock(Boolean inStock) {
+        this.inStock = inStock;
+    }
+
+    public Long getAuthorId() {
+        return authorId;
+    }
+
+    public void setAuthorId(Long authorId) {
+        this.authorId = authorId;
+    }
+}
@@ -0,0 +1,96 @@
+package com.bookstore.api.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of a bulk import: counts plus one entry per rejected record
+public class BulkImportResult {
+    private long created;
+    private long updated;
+    private long failed;
+    private List<RecordError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    public static class RecordError {
+        private long line;
+        private long index;
+        private String message;
+
+        // Default constructor for JSON deserialization
+        public RecordError() {}
+
+        public RecordError(long line, long index, String message) {
+            this.line = line;
+            this.index = index;
+            this.message = message;
+        }
+
+        // Line of the input on which the record starts
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        // Position of the record in the input, from 0
+        public long getIndex() {
+            return index;
+        }
+
+        public void setIndex(long index) {
+            this.index = index;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    // Getters and setters
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public List<RecordError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RecordError> errors) {
+        this.errors = errors;
+    }
+
+    // True when more records failed than the report lists
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public void setErrorsTruncated(boolean errorsTruncated) {
+        this.errorsTruncated = errorsTruncated;
+    }
+}
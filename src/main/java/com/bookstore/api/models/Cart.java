@@ -1,15 +1,34 @@
 package com.bookstore.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+// Cart lines are kept as bookId -> quantity in insertion order, so every line operation is O(1).
+// Methods are synchronized so a cart can be serialized while another request updates it.
 public class Cart {
     private long customerId;
+    private final LongIntLinkedMap lines;
+
+    // Running total of quantities across all lines
+    private int itemCount;
+
+    // Snapshot handed out by getItems(), rebuilt after the next change.
+    // Also lets Jersey's entity filtering discover CartItem, which it only finds through fields.
     private List<CartItem> items;
 
+    // Version stamp for ETags, set by the DataStore after every change
+    private volatile long version;
+
+    public Cart() {
+        this(0);
+    }
+
     public Cart(long customerId) {
         this.customerId = customerId;
-        this.items = new ArrayList<>();
+        this.lines = new LongIntLinkedMap();
     }
 
     // Getters and setters
@@ -21,50 +40,93 @@ public class Cart {
         this.customerId = customerId;
     }
 
-    public List<CartItem> getItems() {
+    // Snapshot of the lines in the order they were first added
+    public synchronized List<CartItem> getItems() {
+        if (items == null) {
+            List<CartItem> snapshot = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.end(); i++) {
+                if (lines.isLive(i)) {
+                    snapshot.add(new CartItem(lines.keyAt(i), lines.valueAt(i)));
+                }
+            }
+            items = Collections.unmodifiableList(snapshot);
+        }
         return items;
     }
 
-    public void setItems(List<CartItem> items) {
-        this.items = items;
+    public synchronized void setItems(List<CartItem> items) {
+        clear();
+        for (CartItem item : items) {
+            addItem(item);
+        }
+    }
+
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    public synchronized int getItemCount() {
+        return itemCount;
+    }
+
+    @JsonIgnore
+    public synchronized int getLineCount() {
+        return lines.size();
+    }
+
+    @JsonIgnore
+    public synchronized boolean isEmpty() {
+        return lines.size() == 0;
     }
 
     // Helper methods
-    public void addItem(CartItem item) {
-        // Check if book already exists in cart
-        for (CartItem existingItem : items) {
-            if (existingItem.getBookId() == item.getBookId()) {
-                existingItem.setQuantity(existingItem.getQuantity() + item.getQuantity());
-                return;
-            }
+    public synchronized void addItem(CartItem item) {
+        // Adds to the quantity if the book is already in the cart
+        lines.addTo(item.getBookId(), item.getQuantity());
+        itemCount += item.getQuantity();
+        items = null;
+    }
+
+    public synchronized void updateItem(long bookId, int quantity) {
+        if (lines.containsKey(bookId)) {
+            itemCount += quantity - lines.replace(bookId, quantity);
+            items = null;
         }
-        // If no existing item, add new item
-        items.add(item);
     }
 
-    public void updateItem(long bookId, int quantity) {
-        for (CartItem item : items) {
-            if (item.getBookId() == bookId) {
-                item.setQuantity(quantity);
-                return;
-            }
+    public synchronized void removeItem(long bookId) {
+        if (lines.containsKey(bookId)) {
+            itemCount -= lines.remove(bookId);
+            items = null;
         }
     }
 
-    public void removeItem(long bookId) {
-        items.removeIf(item -> item.getBookId() == bookId);
+    public synchronized boolean containsItem(long bookId) {
+        return lines.containsKey(bookId);
     }
 
-    public CartItem getItem(long bookId) {
-        for (CartItem item : items) {
-            if (item.getBookId() == bookId) {
-                return item;
-            }
+    // Quantity of the book in the cart, 0 if it is not in the cart
+    public synchronized int getQuantity(long bookId) {
+        return lines.get(bookId, 0);
+    }
+
+    public synchronized CartItem getItem(long bookId) {
+        if (!lines.containsKey(bookId)) {
+            return null;
         }
-        return null;
+        return new CartItem(bookId, lines.get(bookId, 0));
     }
 
-    public void clear() {
-        items.clear();
+    public synchronized void clear() {
+        lines.clear();
+        itemCount = 0;
+        items = null;
     }
 }
@@ -0,0 +1,51 @@
+package com.bookstore.api.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// One line change in a batch cart update: {"op": "add" | "update" | "remove", "bookId": ..., "quantity": ...}.
+// add increases the line's quantity, update sets it, remove drops the line and ignores quantity.
+public class CartOperation {
+    public enum Op {
+        @JsonProperty("add") ADD,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("remove") REMOVE
+    }
+
+    private Op op;
+    private long bookId;
+    private int quantity;
+
+    // Default constructor for JSON deserialization
+    public CartOperation() {}
+
+    public CartOperation(Op op, long bookId, int quantity) {
+        this.op = op;
+        this.bookId = bookId;
+        this.quantity = quantity;
+    }
+
+    // Getters and setters
+    public Op getOp() {
+        return op;
+    }
+
+    public void setOp(Op op) {
+        this.op = op;
+    }
+
+    public long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(long bookId) {
+        this.bookId = bookId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -1,10 +1,13 @@
 package com.bookstore.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class Customer {
     private long id;
     private String name;
     private String email;
     private String password;
+    private long version;
 
     // Default constructor for JSON deserialization
     public Customer() {}
@@ -48,4 +51,15 @@ public class Customer {
     public void setPassword(String password) {
         this.password = password;
     }
-}
\ No newline at end of file
+
+    // Version stamp for ETags, set by the DataStore on every change; not part of the JSON
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,211 @@
+package com.bookstore.api.models;
+
+import java.util.Arrays;
+
+// Insertion-ordered long -> int map on primitive arrays (no boxing, no per-entry objects).
+// Entries live in dense arrays in insertion order; an open-addressing table maps keys to entry positions.
+// Removed entries leave a hole that is compacted away once holes make up half of the entries.
+// Not thread-safe.
+final class LongIntLinkedMap {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int EMPTY = -1;
+
+    // Dense entries in insertion order
+    private long[] keys;
+    private int[] values;
+    private boolean[] live;
+    private int end;
+    private int size;
+
+    // Hash table of entry positions, EMPTY for a free slot; length is a power of two
+    private int[] slots;
+
+    LongIntLinkedMap() {
+        keys = new long[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        live = new boolean[INITIAL_CAPACITY];
+        slots = newSlots(INITIAL_CAPACITY * 2);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(long key) {
+        return slots[findSlot(key)] != EMPTY;
+    }
+
+    // Returns the value for key, or defaultValue if absent
+    int get(long key, int defaultValue) {
+        int entry = slots[findSlot(key)];
+        return entry == EMPTY ? defaultValue : values[entry];
+    }
+
+    // Sets the value for key, appending a new entry if absent; returns the previous value or 0
+    int put(long key, int value) {
+        int slot = findSlot(key);
+        int entry = slots[slot];
+        if (entry != EMPTY) {
+            int previous = values[entry];
+            values[entry] = value;
+            return previous;
+        }
+        append(slot, key, value);
+        return 0;
+    }
+
+    // Adds delta to the value for key (0 if absent); returns the new value
+    int addTo(long key, int delta) {
+        int slot = findSlot(key);
+        int entry = slots[slot];
+        if (entry != EMPTY) {
+            values[entry] += delta;
+            return values[entry];
+        }
+        append(slot, key, delta);
+        return delta;
+    }
+
+    // Replaces the value only if key is present; returns the previous value or 0
+    int replace(long key, int value) {
+        int entry = slots[findSlot(key)];
+        if (entry == EMPTY) {
+            return 0;
+        }
+        int previous = values[entry];
+        values[entry] = value;
+        return previous;
+    }
+
+    // Removes key; returns the removed value or 0 if absent
+    int remove(long key) {
+        int slot = findSlot(key);
+        int entry = slots[slot];
+        if (entry == EMPTY) {
+            return 0;
+        }
+        int removed = values[entry];
+        deleteSlot(slot);
+        live[entry] = false;
+        size--;
+        if (size * 2 < end && end > INITIAL_CAPACITY) {
+            compact();
+        }
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(live, 0, end, false);
+        Arrays.fill(slots, EMPTY);
+        end = 0;
+        size = 0;
+    }
+
+    // Iteration in insertion order: positions [0, end()) that are isLive()
+    int end() {
+        return end;
+    }
+
+    boolean isLive(int position) {
+        return live[position];
+    }
+
+    long keyAt(int position) {
+        return keys[position];
+    }
+
+    int valueAt(int position) {
+        return values[position];
+    }
+
+    private void append(int slot, long key, int value) {
+        if (end == keys.length) {
+            if (size * 2 < end) {
+                compact();
+            } else {
+                grow();
+            }
+            slot = findSlot(key);
+        }
+        keys[end] = key;
+        values[end] = value;
+        live[end] = true;
+        slots[slot] = end;
+        end++;
+        size++;
+    }
+
+    private int findSlot(long key) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != EMPTY && keys[slots[slot]] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion keeps linear probe chains intact without tombstones
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots[next] != EMPTY) {
+            int home = hash(keys[slots[next]]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = EMPTY;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        live = Arrays.copyOf(live, capacity);
+        rehash(capacity * 2);
+    }
+
+    // Squeezes out removed entries, preserving insertion order
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            if (live[i]) {
+                keys[target] = keys[i];
+                values[target] = values[i];
+                live[target] = true;
+                target++;
+            }
+        }
+        Arrays.fill(live, target, end, false);
+        end = target;
+        rehash(slots.length);
+    }
+
+    private void rehash(int slotCount) {
+        slots = newSlots(slotCount);
+        int mask = slotCount - 1;
+        for (int i = 0; i < end; i++) {
+            if (live[i]) {
+                int slot = hash(keys[i]) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i;
+            }
+        }
+    }
+
+    private static int[] newSlots(int count) {
+        int[] table = new int[count];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
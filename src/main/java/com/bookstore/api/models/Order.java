@@ -1,5 +1,7 @@
 package com.bookstore.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -10,6 +12,7 @@ public class Order {
     private List<OrderItem> items;
     private double totalAmount;
     private Date orderDate;
+    private long version;
 
     public Order() {
         this.items = new ArrayList<>();
@@ -64,6 +67,17 @@ public class Order {
         this.orderDate = orderDate;
     }
 
+    // Version stamp for ETags, set by the DataStore when the order is stored; not part of the JSON
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     // Helper methods
     public void addItem(OrderItem item) {
         items.add(item);
@@ -6,6 +6,8 @@ public class OrderItem {
     private double price;
     private int quantity;
 
+    public OrderItem() {}
+
     public OrderItem(long bookId, String bookTitle, double price, int quantity) {
         this.bookId = bookId;
         this.bookTitle = bookTitle;
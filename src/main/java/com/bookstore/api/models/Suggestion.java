@@ -0,0 +1,42 @@
+package com.bookstore.api.models;
+
+// One completion of GET /books/suggest: a book title ("book") or an author name ("author")
+public class Suggestion {
+    private String type;
+    private long id;
+    private String text;
+
+    // Default constructor for JSON deserialization
+    public Suggestion() {}
+
+    public Suggestion(String type, long id, String text) {
+        this.type = type;
+        this.id = id;
+        this.text = text;
+    }
+
+    // Getters and setters
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
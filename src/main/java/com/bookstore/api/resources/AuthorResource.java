@@ -7,8 +7,11 @@ import com.bookstore.api.exceptions.AuthorNotFoundException;
 import com.bookstore.api.exceptions.InvalidInputException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
@@ -34,18 +37,31 @@ public class AuthorResource {
     }
 
     @GET
-    public List<Author> getAllAuthors() {
-        return dataStore.getAllAuthors();
+    public Response getAllAuthors(
+            @QueryParam("after") @DefaultValue("0") long after,
+            @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit,
+            @Context UriInfo uriInfo) {
+        Pagination.validateLimit(limit);
+
+        List<Author> authors = dataStore.getAuthors(after, limit);
+        return Pagination.page(new GenericEntity<List<Author>>(authors) {}, limit, Author::getId, uriInfo);
+    }
+
+    // Full dump streamed element by element; use instead of paging through GET when exporting everything
+    @GET
+    @Path("/export")
+    public StreamingOutput exportAuthors() {
+        return JsonStreaming.array(dataStore.iterateAuthors());
     }
 
     @GET
     @Path("/{id}")
-    public Author getAuthor(@PathParam("id") long id) {
+    public Response getAuthor(@PathParam("id") long id, @Context Request request) {
         Author author = dataStore.getAuthor(id);
         if (author == null) {
             throw new AuthorNotFoundException(id);
         }
-        return author;
+        return EntityTags.ok(request, author, author.getVersion());
     }
 
     @PUT
@@ -81,13 +97,17 @@ public class AuthorResource {
 
     @GET
     @Path("/{id}/books")
-    public List<Book> getAuthorBooks(@PathParam("id") long id) {
+    @Produces({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE_QS})
+    public Response getAuthorBooks(@PathParam("id") long id, @Context Request request, @Context UriInfo uriInfo) {
         Author author = dataStore.getAuthor(id);
         if (author == null) {
             throw new AuthorNotFoundException(id);
         }
 
-        return dataStore.getBooksByAuthor(id);
+        // The stamp is read before the list, so a list cached under it is at least as new
+        long version = dataStore.getAuthorBooksVersion(id);
+        return Response.ok(ResponseCache.AUTHOR_BOOKS.get(request, uriInfo, id, version,
+                () -> new GenericEntity<List<Book>>(dataStore.getBooksByAuthor(id)) {})).build();
     }
 
     private void validateAuthor(Author author) {
@@ -0,0 +1,161 @@
+package com.bookstore.api.resources;
+
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.BulkImportResult;
+import com.bookstore.api.storage.DataStore;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Streaming bulk import behind POST /books/bulk. The body is either a JSON array of books or NDJSON (one book
+// per line) and is read record by record with Jackson's streaming parser, so only the current batch is held in
+// memory however large the upload is. Each batch is bound and validated in parallel, then stored with a single
+// DataStore.putBooks call. Books without an id are created; books with the id of an existing book replace it.
+//
+// Invalid records are skipped and listed in the report with the line they start on. Malformed JSON ends the
+// import at that point: everything before it is kept and the error is reported.
+final class BookImport {
+    static final String NDJSON = "application/x-ndjson";
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final DataStore dataStore;
+    // Computed once per import instead of once per record
+    private final int currentYear = BookResource.currentYear();
+    private final BulkImportResult result = new BulkImportResult();
+
+    // The current batch: parsed records with their starting line and position in the input
+    private final List<JsonNode> records = new ArrayList<>(BATCH_SIZE);
+    private final long[] lines = new long[BATCH_SIZE];
+    private long firstIndex;
+
+    private BookImport(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    static BulkImportResult run(DataStore dataStore, InputStream body) throws IOException {
+        BookImport bookImport = new BookImport(dataStore);
+        bookImport.read(body);
+        return bookImport.result;
+    }
+
+    private void read(InputStream body) throws IOException {
+        long index = 0;
+        try (JsonParser parser = MAPPER.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            // NDJSON is a sequence of root-level values, which the parser reads without any framing
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                long line = parser.getTokenLocation().getLineNr();
+                if (token == JsonToken.START_OBJECT) {
+                    if (records.isEmpty()) {
+                        firstIndex = index;
+                    }
+                    lines[records.size()] = line;
+                    records.add(parser.readValueAsTree());
+                    if (records.size() == BATCH_SIZE) {
+                        flush();
+                    }
+                } else {
+                    // Keep the report in input order
+                    flush();
+                    parser.skipChildren();
+                    fail(line, index, "Expected a JSON object.");
+                }
+                index++;
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            flush();
+            long line = e.getLocation() != null ? e.getLocation().getLineNr() : -1;
+            fail(line, index, "Malformed JSON, rest of the input skipped: " + e.getOriginalMessage());
+            return;
+        }
+        flush();
+    }
+
+    private void flush() {
+        int count = records.size();
+        if (count == 0) {
+            return;
+        }
+
+        // Bind and validate the batch in parallel; each slot gets either a book or a problem
+        Book[] books = new Book[count];
+        String[] problems = new String[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            try {
+                Book book = MAPPER.treeToValue(records.get(i), Book.class);
+                problems[i] = validate(book);
+                if (problems[i] == null) {
+                    books[i] = book;
+                }
+            } catch (JsonProcessingException e) {
+                problems[i] = "Invalid book: " + e.getOriginalMessage();
+            }
+        });
+
+        List<Book> valid = new ArrayList<>(count);
+        boolean[] creates = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if (books[i] != null) {
+                creates[i] = books[i].getId() == 0;
+                valid.add(books[i]);
+            }
+        }
+        List<Book> stored = valid.isEmpty() ? valid : dataStore.putBooks(valid);
+
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (books[i] == null) {
+                fail(lines[i], firstIndex + i, problems[i]);
+                continue;
+            }
+            Book book = stored.get(next++);
+            if (book == null) {
+                // The book or its author was deleted between validation and storing
+                fail(lines[i], firstIndex + i, dataStore.authorExists(books[i].getAuthorId())
+                        ? "Book with ID " + books[i].getId() + " does not exist."
+                        : "Author with ID " + books[i].getAuthorId() + " does not exist.");
+            } else if (creates[i]) {
+                result.setCreated(result.getCreated() + 1);
+            } else {
+                result.setUpdated(result.getUpdated() + 1);
+            }
+        }
+        records.clear();
+    }
+
+    // Same rules as a single POST or PUT, reported as a message instead of thrown
+    private String validate(Book book) {
+        if (book.getId() < 0 || (book.getId() > 0 && dataStore.getBook(book.getId()) == null)) {
+            return "Book with ID " + book.getId() + " does not exist.";
+        }
+        if (!dataStore.authorExists(book.getAuthorId())) {
+            return "Author with ID " + book.getAuthorId() + " does not exist.";
+        }
+        return BookResource.invalidField(book, currentYear);
+    }
+
+    private void fail(long line, long index, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new BulkImportResult.RecordError(line, index, message));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package com.bookstore.api.resources;
 
 import com.bookstore.api.models.Book;
+import com.bookstore.api.models.BookFacets;
+import com.bookstore.api.models.BookFilter;
+import com.bookstore.api.models.BulkImportResult;
+import com.bookstore.api.models.Suggestion;
 import com.bookstore.api.storage.DataStore;
 import com.bookstore.api.exceptions.BookNotFoundException;
 import com.bookstore.api.exceptions.AuthorNotFoundException;
 import com.bookstore.api.exceptions.InvalidInputException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Calendar;
 import java.util.List;
 
 @Path("/books")
-@Produces(MediaType.APPLICATION_JSON)
-@Consumes(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE_QS})
+@Consumes({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE})
 public class BookResource {
+    private static final int MAX_SUGGESTIONS = 50;
+
     private DataStore dataStore = DataStore.getInstance();
 
     @POST
@@ -34,24 +46,116 @@ public class BookResource {
                 .build();
     }
 
+    // Bulk create/replace from a JSON array or NDJSON; returns counts and the records that were rejected
+    @POST
+    @Path("/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, BookImport.NDJSON})
+    public BulkImportResult importBooks(InputStream body) throws IOException {
+        return BookImport.run(dataStore, body);
+    }
+
+    // Optional filters narrow the page; the next-page link keeps them
+    @GET
+    public Response getAllBooks(
+            @QueryParam("after") @DefaultValue("0") long after,
+            @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit,
+            @QueryParam("minPrice") Double minPrice,
+            @QueryParam("maxPrice") Double maxPrice,
+            @QueryParam("yearFrom") Integer yearFrom,
+            @QueryParam("yearTo") Integer yearTo,
+            @QueryParam("inStock") Boolean inStock,
+            @QueryParam("authorId") Long authorId,
+            @Context UriInfo uriInfo) {
+        Pagination.validateLimit(limit);
+        BookFilter filter = bookFilter(minPrice, maxPrice, yearFrom, yearTo, inStock, authorId);
+
+        List<Book> books = dataStore.getBooks(filter, after, limit);
+        return Pagination.page(new GenericEntity<List<Book>>(books) {}, limit, Book::getId, uriInfo);
+    }
+
+    // Counts per price range, decade, stock state and author for the same filters as GET /books
+    @GET
+    @Path("/facets")
+    public BookFacets getBookFacets(
+            @QueryParam("minPrice") Double minPrice,
+            @QueryParam("maxPrice") Double maxPrice,
+            @QueryParam("yearFrom") Integer yearFrom,
+            @QueryParam("yearTo") Integer yearTo,
+            @QueryParam("inStock") Boolean inStock,
+            @QueryParam("authorId") Long authorId) {
+        return dataStore.getBookFacets(bookFilter(minPrice, maxPrice, yearFrom, yearTo, inStock, authorId));
+    }
+
+    private static BookFilter bookFilter(Double minPrice, Double maxPrice, Integer yearFrom, Integer yearTo,
+                                         Boolean inStock, Long authorId) {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            throw new InvalidInputException("minPrice cannot be greater than maxPrice.");
+        }
+        if (yearFrom != null && yearTo != null && yearFrom > yearTo) {
+            throw new InvalidInputException("yearFrom cannot be greater than yearTo.");
+        }
+        return new BookFilter(minPrice, maxPrice, yearFrom, yearTo, inStock, authorId);
+    }
+
+    // Ranked full-text search over title, ISBN and author name; the last word of q also matches as a prefix
+    @GET
+    @Path("/search")
+    public GenericEntity<List<Book>> searchBooks(
+            @QueryParam("q") String query,
+            @QueryParam("limit") @DefaultValue("20") int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidInputException("Search query q cannot be empty.");
+        }
+        Pagination.validateLimit(limit);
+
+        return new GenericEntity<List<Book>>(dataStore.searchBooks(query, limit)) {};
+    }
+
+    // Typeahead for the search box: most ordered titles and author names starting with prefix, ignoring case
+    @GET
+    @Path("/suggest")
+    public GenericEntity<List<Suggestion>> suggest(
+            @QueryParam("prefix") String prefix,
+            @QueryParam("limit") @DefaultValue("10") int limit) {
+        String start = prefix == null ? "" : prefix.stripLeading();
+        if (start.isEmpty()) {
+            throw new InvalidInputException("Suggestion prefix cannot be empty.");
+        }
+        if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+            throw new InvalidInputException("Limit must be between 1 and " + MAX_SUGGESTIONS + ".");
+        }
+
+        return new GenericEntity<List<Suggestion>>(dataStore.suggest(start, limit)) {};
+    }
+
+    // Full dump streamed element by element; use instead of paging through GET when exporting everything
     @GET
-    public List<Book> getAllBooks() {
-        return dataStore.getAllBooks();
+    @Path("/export")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput exportBooks() {
+        return JsonStreaming.array(dataStore.iterateBooks());
     }
 
+    // Carries an ETag; If-None-Match with the current one gets 304 Not Modified. The JSON comes from the response
+    // cache.
     @GET
     @Path("/{id}")
-    public Book getBook(@PathParam("id") long id) {
+    public Response getBook(@PathParam("id") long id, @Context Request request, @Context UriInfo uriInfo) {
         Book book = dataStore.getBook(id);
         if (book == null) {
             throw new BookNotFoundException(id);
         }
-        return book;
+        // Read once: a checkout may change it while the response is built
+        long version = book.getVersion();
+        return EntityTags.ok(request, EntityTags.of(request, version),
+                () -> ResponseCache.BOOKS.get(request, uriInfo, id, version, () -> book));
     }
 
+    // With If-Match, replaces the book only if it is still at one of the given ETags, else 412
     @PUT
     @Path("/{id}")
-    public Book updateBook(@PathParam("id") long id, Book book) {
+    public Response updateBook(@PathParam("id") long id, Book book,
+                               @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, @Context Request request) {
         // Check if book exists
         if (dataStore.getBook(id) == null) {
             throw new BookNotFoundException(id);
@@ -60,8 +164,11 @@ public class BookResource {
         // Validate the book
         validateBook(book);
 
-        Book updatedBook = dataStore.updateBook(id, book);
-        return updatedBook;
+        Book updatedBook = dataStore.updateBook(id, book, EntityTags.ifMatch(ifMatch));
+        if (updatedBook == null) {
+            throw new BookNotFoundException(id);
+        }
+        return Response.ok(updatedBook).tag(EntityTags.of(request, updatedBook.getVersion())).build();
     }
 
     @DELETE
@@ -82,30 +189,42 @@ public class BookResource {
             throw new AuthorNotFoundException(book.getAuthorId());
         }
 
+        String problem = invalidField(book, currentYear());
+        if (problem != null) {
+            throw new InvalidInputException(problem);
+        }
+    }
+
+    static int currentYear() {
+        return Calendar.getInstance().get(Calendar.YEAR);
+    }
+
+    // Field checks shared with the bulk import; returns the first problem, or null if the book is valid
+    static String invalidField(Book book, int currentYear) {
         // Check if publication year is not in the future
-        int currentYear = Calendar.getInstance().get(Calendar.YEAR);
         if (book.getPublicationYear() > currentYear) {
-            throw new InvalidInputException("Publication year cannot be in the future.");
+            return "Publication year cannot be in the future.";
         }
 
         // Check if price is positive
         if (book.getPrice() <= 0) {
-            throw new InvalidInputException("Book price must be positive.");
+            return "Book price must be positive.";
         }
 
         // Check if stock is non-negative
         if (book.getStock() < 0) {
-            throw new InvalidInputException("Book stock cannot be negative.");
+            return "Book stock cannot be negative.";
         }
 
         // Check if ISBN is valid (simplified validation)
         if (book.getIsbn() == null || book.getIsbn().isEmpty()) {
-            throw new InvalidInputException("ISBN cannot be empty.");
+            return "ISBN cannot be empty.";
         }
 
         // Check if title is valid
         if (book.getTitle() == null || book.getTitle().isEmpty()) {
-            throw new InvalidInputException("Book title cannot be empty.");
+            return "Book title cannot be empty.";
         }
+        return null;
     }
-}
\ No newline at end of file
+}
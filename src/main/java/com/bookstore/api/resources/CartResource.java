@@ -3,6 +3,7 @@ package com.bookstore.api.resources;
 import com.bookstore.api.models.Book;
 import com.bookstore.api.models.Cart;
 import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.CartOperation;
 import com.bookstore.api.storage.DataStore;
 import com.bookstore.api.exceptions.BookNotFoundException;
 import com.bookstore.api.exceptions.CustomerNotFoundException;
@@ -11,17 +12,25 @@ import com.bookstore.api.exceptions.InvalidInputException;
 import com.bookstore.api.exceptions.OutOfStockException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Path("/customers/{customerId}/cart")
-@Produces(MediaType.APPLICATION_JSON)
-@Consumes(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE_QS})
+@Consumes({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE})
 public class CartResource {
+    private static final int MAX_OPERATIONS = 1000;
+
     private DataStore dataStore = DataStore.getInstance();
 
+    // Carries an ETag; If-None-Match with the current one gets 304 Not Modified
     @GET
-    public Cart getCart(@PathParam("customerId") long customerId) {
+    public Response getCart(@PathParam("customerId") long customerId, @Context Request request) {
         // Check if customer exists
         if (!dataStore.customerExists(customerId)) {
             throw new CustomerNotFoundException(customerId);
@@ -33,7 +42,7 @@ public class CartResource {
             cart = dataStore.createCart(customerId);
         }
 
-        return cart;
+        return EntityTags.ok(request, cart, EntityTags.of(request, cart.getVersion()));
     }
 
     @POST
@@ -66,6 +75,63 @@ public class CartResource {
         return dataStore.getCart(customerId);
     }
 
+    // Batch of add/update/remove operations applied all together or not at all, with one response
+    @PATCH
+    @Path("/items")
+    public Cart updateCartItems(@PathParam("customerId") long customerId, List<CartOperation> operations) {
+        // Check if customer exists
+        if (!dataStore.customerExists(customerId)) {
+            throw new CustomerNotFoundException(customerId);
+        }
+
+        if (operations == null || operations.isEmpty()) {
+            throw new InvalidInputException("At least one cart operation is required.");
+        }
+        if (operations.size() > MAX_OPERATIONS) {
+            throw new InvalidInputException("At most " + MAX_OPERATIONS + " cart operations are allowed per request.");
+        }
+
+        // Validate every operation before touching the cart; whether a line is in the cart is checked under lock.
+        // Stock is checked against what the batch puts in each line so far, so several adds of one book in one
+        // batch cannot together take more than its stock.
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            CartOperation operation = operations.get(i);
+            if (operation == null || operation.getOp() == null) {
+                throw new InvalidInputException("Operation " + i + ": op must be add, update or remove.");
+            }
+            if (operation.getOp() == CartOperation.Op.REMOVE) {
+                quantities.remove(operation.getBookId());
+                continue;
+            }
+
+            // Check if book exists
+            Book book = dataStore.getBook(operation.getBookId());
+            if (book == null) {
+                throw new BookNotFoundException(operation.getBookId());
+            }
+
+            // Validate item quantity
+            if (operation.getQuantity() <= 0) {
+                throw new InvalidInputException("Operation " + i + ": item quantity must be positive.");
+            }
+
+            // Check stock
+            int quantity = operation.getQuantity();
+            if (operation.getOp() == CartOperation.Op.ADD) {
+                // Saturates rather than overflowing past the stock check
+                quantity = (int) Math.min(Integer.MAX_VALUE,
+                        (long) quantities.getOrDefault(operation.getBookId(), 0) + quantity);
+            }
+            quantities.put(operation.getBookId(), quantity);
+            if (book.getStock() < quantity) {
+                throw new OutOfStockException(operation.getBookId(), quantity, book.getStock());
+            }
+        }
+
+        return dataStore.applyCartOperations(customerId, operations);
+    }
+
     @PUT
     @Path("/items/{bookId}")
     public Cart updateCartItem(
@@ -129,8 +195,7 @@ public class CartResource {
         }
 
         // Check if book is in cart
-        CartItem item = cart.getItem(bookId);
-        if (item == null) {
+        if (!cart.containsItem(bookId)) {
             throw new InvalidInputException("Book not found in cart.");
         }
 
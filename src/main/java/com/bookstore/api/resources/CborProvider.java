@@ -0,0 +1,77 @@
+package com.bookstore.api.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+
+// CBOR (RFC 8949) bodies for service-to-service callers: the same fields as the JSON, in a binary encoding that
+// is smaller and cheaper to write and parse. Resources offer it next to JSON, with a lower quality so clients
+// that accept anything still get JSON.
+@Provider
+@Produces(CborProvider.MEDIA_TYPE)
+@Consumes(CborProvider.MEDIA_TYPE)
+public class CborProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+    public static final String MEDIA_TYPE = "application/cbor";
+    // For @Produces: preferred below JSON when the client accepts both equally
+    public static final String MEDIA_TYPE_QS = MEDIA_TYPE + ";qs=0.9";
+    static final MediaType TYPE = MediaType.valueOf(MEDIA_TYPE);
+
+    private static final ObjectMapper MAPPER = new CBORMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE, TYPE).build();
+
+    // Whether content negotiation picks CBOR over JSON for the request
+    static boolean isSelected(Request request) {
+        Variant variant = request.selectVariant(VARIANTS);
+        return variant != null && TYPE.isCompatible(variant.getMediaType());
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return !InputStream.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        return MAPPER.readerFor(MAPPER.constructType(genericType)).readValue(entityStream);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type != PreEncodedJson.class && !StreamingOutput.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        MAPPER.writerFor(MAPPER.constructType(genericType)).writeValue(entityStream, entity);
+    }
+}
@@ -6,8 +6,11 @@ import com.bookstore.api.exceptions.CustomerNotFoundException;
 import com.bookstore.api.exceptions.InvalidInputException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
@@ -38,18 +41,31 @@ public class CustomerResource {
     }
 
     @GET
-    public List<Customer> getAllCustomers() {
-        return dataStore.getAllCustomers();
+    public Response getAllCustomers(
+            @QueryParam("after") @DefaultValue("0") long after,
+            @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit,
+            @Context UriInfo uriInfo) {
+        Pagination.validateLimit(limit);
+
+        List<Customer> customers = dataStore.getCustomers(after, limit);
+        return Pagination.page(new GenericEntity<List<Customer>>(customers) {}, limit, Customer::getId, uriInfo);
+    }
+
+    // Full dump streamed element by element; use instead of paging through GET when exporting everything
+    @GET
+    @Path("/export")
+    public StreamingOutput exportCustomers() {
+        return JsonStreaming.array(dataStore.iterateCustomers());
     }
 
     @GET
     @Path("/{id}")
-    public Customer getCustomer(@PathParam("id") long id) {
+    public Response getCustomer(@PathParam("id") long id, @Context Request request) {
         Customer customer = dataStore.getCustomer(id);
         if (customer == null) {
             throw new CustomerNotFoundException(id);
         }
-        return customer;
+        return EntityTags.ok(request, customer, customer.getVersion());
     }
 
     @PUT
@@ -0,0 +1,70 @@
+package com.bookstore.api.resources;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+// Strong ETags made from entity version stamps, e.g. ETag: "1760000000000123". The CBOR representation is a
+// different body, so its tag has a suffix: "1760000000000123-cbor".
+final class EntityTags {
+    private static final String CBOR_SUFFIX = "-cbor";
+
+    private EntityTags() {}
+
+    static EntityTag of(long version) {
+        return new EntityTag(Long.toString(version));
+    }
+
+    // The tag of the representation content negotiation picks for the request
+    static EntityTag of(Request request, long version) {
+        return CborProvider.isSelected(request) ? new EntityTag(version + CBOR_SUFFIX) : of(version);
+    }
+
+    // 200 with the entity and its ETag, or 304 Not Modified without serializing anything when If-None-Match
+    // already names the version
+    static Response ok(Request request, Object entity, long version) {
+        return ok(request, entity, of(version));
+    }
+
+    static Response ok(Request request, Object entity, EntityTag tag) {
+        return ok(request, tag, () -> entity);
+    }
+
+    // Same, with the entity only produced when it is sent
+    static Response ok(Request request, EntityTag tag, Supplier<?> entity) {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(entity.get()).tag(tag).build();
+    }
+
+    // The versions an If-Match header accepts: any without the header or for "*", otherwise those named by its
+    // strong tags of either representation. Weak or malformed tags never match, as If-Match uses the strong
+    // comparison.
+    static LongPredicate ifMatch(String header) {
+        if (header == null || header.trim().equals("*")) {
+            return version -> true;
+        }
+        Set<Long> versions = new HashSet<>();
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                String value = tag.substring(1, tag.length() - 1);
+                if (value.endsWith(CBOR_SUFFIX)) {
+                    value = value.substring(0, value.length() - CBOR_SUFFIX.length());
+                }
+                try {
+                    versions.add(Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    // Not one of ours, so it matches nothing
+                }
+            }
+        }
+        return versions::contains;
+    }
+}
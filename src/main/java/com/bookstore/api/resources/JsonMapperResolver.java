@@ -0,0 +1,21 @@
+package com.bookstore.api.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+// The one ObjectMapper behind JSON responses. Jersey's Jackson provider resolves it through this class, and
+// PreEncodedJson encodes cached responses with it, so a cached body is byte for byte what Jersey would write.
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class JsonMapperResolver implements ContextResolver<ObjectMapper> {
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Override
+    public ObjectMapper getContext(Class<?> type) {
+        return MAPPER;
+    }
+}
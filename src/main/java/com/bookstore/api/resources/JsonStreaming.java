@@ -0,0 +1,33 @@
+package com.bookstore.api.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.ws.rs.core.StreamingOutput;
+
+// Writes large collections as a JSON array straight to the response stream, one element at a time,
+// so heap use does not grow with the size of the collection
+final class JsonStreaming {
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    // Let the generator's buffer decide when to flush instead of flushing after every element
+    private static final ObjectWriter WRITER = MAPPER.writer()
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private JsonStreaming() {}
+
+    static <T> StreamingOutput array(Iterable<T> items) {
+        return output -> {
+            try (JsonGenerator generator = MAPPER.getFactory().createGenerator(output)) {
+                generator.writeStartArray();
+                for (T item : items) {
+                    WRITER.writeValue(generator, item);
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+}
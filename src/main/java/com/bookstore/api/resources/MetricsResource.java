@@ -0,0 +1,54 @@
+package com.bookstore.api.resources;
+
+import com.bookstore.api.Main;
+import com.bookstore.api.metrics.Metrics;
+import com.bookstore.api.storage.CheckoutPipeline;
+import com.bookstore.api.storage.DataStore;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+// Request metrics and DataStore gauges in the Prometheus text exposition format
+@Path("/metrics")
+public class MetricsResource {
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private DataStore dataStore = DataStore.getInstance();
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public String getMetrics() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        Metrics.getInstance().write(out);
+
+        out.append("# HELP bookstore_datastore_entities Entities held by the data store\n");
+        out.append("# TYPE bookstore_datastore_entities gauge\n");
+        Metrics.appendSample(out, "bookstore_datastore_entities", "collection=\"books\"", dataStore.getBookCount());
+        Metrics.appendSample(out, "bookstore_datastore_entities", "collection=\"authors\"", dataStore.getAuthorCount());
+        Metrics.appendSample(out, "bookstore_datastore_entities", "collection=\"customers\"", dataStore.getCustomerCount());
+        Metrics.appendSample(out, "bookstore_datastore_entities", "collection=\"carts\"", dataStore.getCartCount());
+        Metrics.appendSample(out, "bookstore_datastore_entities", "collection=\"orders\"", dataStore.getOrderCount());
+
+        Metrics.writeSample(out, "bookstore_checkout_conflicts_total", "counter",
+                "Checkouts that waited for a concurrent request of the same customer lock stripe", "",
+                dataStore.getCheckoutConflicts());
+        Metrics.writeSample(out, "bookstore_stock_reservation_failures_total", "counter",
+                "Checkouts refused because stock could not be reserved", "",
+                dataStore.getStockReservationFailures());
+        CheckoutPipeline checkout = CheckoutPipeline.getInstance();
+        Metrics.writeSample(out, "bookstore_checkout_queue_depth", "gauge",
+                "Checkouts waiting in the checkout pipeline", "", checkout.getQueueDepth());
+        Metrics.writeSample(out, "bookstore_checkout_rejected_total", "counter",
+                "Checkouts rejected with 503 because the pipeline was full", "", checkout.getRejected());
+        Metrics.writeSample(out, "bookstore_startup_ready_seconds", "gauge",
+                "Time from startServer() until the server accepted requests", "", Main.getReadyMillis() / 1000.0);
+        Metrics.writeSample(out, "bookstore_executor_info", "gauge",
+                "Threads running resource methods", "mode=\"" + Main.getExecutionMode() + "\"", 1);
+        Metrics.writeSample(out, "bookstore_recovery_seconds", "gauge",
+                "Time spent loading the snapshot and replaying the log at startup", "",
+                dataStore.getRecoveryMillis() / 1000.0);
+        ResponseCache.writeMetrics(out);
+        return out.toString();
+    }
+}
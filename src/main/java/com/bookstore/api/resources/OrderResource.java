@@ -1,24 +1,40 @@
 package com.bookstore.api.resources;
 
+import com.bookstore.api.models.Cart;
 import com.bookstore.api.models.Order;
+import com.bookstore.api.storage.CheckoutPipeline;
 import com.bookstore.api.storage.DataStore;
 import com.bookstore.api.exceptions.CustomerNotFoundException;
 import com.bookstore.api.exceptions.CartNotFoundException;
 import com.bookstore.api.exceptions.InvalidInputException;
 import com.bookstore.api.exceptions.BookNotFoundException;
+import com.bookstore.api.exceptions.ServiceBusyException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Path("/customers/{customerId}/orders")
-@Produces(MediaType.APPLICATION_JSON)
-@Consumes(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE_QS})
+@Consumes({MediaType.APPLICATION_JSON, CborProvider.MEDIA_TYPE})
 public class OrderResource {
+    private static final long CHECKOUT_TIMEOUT_SECONDS = 30;
+
     private DataStore dataStore = DataStore.getInstance();
 
     @POST
@@ -29,14 +45,22 @@ public class OrderResource {
         }
 
         // Check if cart exists and is not empty
-        if (dataStore.getCart(customerId) == null || dataStore.getCart(customerId).getItems().isEmpty()) {
+        Cart cart = dataStore.getCart(customerId);
+        if (cart == null || cart.isEmpty()) {
             throw new CartNotFoundException(customerId);
         }
 
-        // Create order
-        Order order = dataStore.createOrder(customerId);
+        // Create order through the checkout pipeline and wait for it
+        // (throws OutOfStockException naming the first line that could not be reserved)
+        Order order;
+        try {
+            order = awaitCheckout(CheckoutPipeline.getInstance().submit(customerId, false));
+        } catch (TimeoutException e) {
+            // Started but not done: the order may yet be placed, so point at the order history instead of failing
+            return Response.accepted().location(uriInfo.getAbsolutePath()).build();
+        }
         if (order == null) {
-            throw new InvalidInputException("Failed to create order. Check stock levels.");
+            throw new InvalidInputException("Failed to create order. The cart is empty.");
         }
 
         URI uri = uriInfo.getAbsolutePathBuilder().path(String.valueOf(order.getId())).build();
@@ -46,21 +70,103 @@ public class OrderResource {
                 .build();
     }
 
+    // Asynchronous checkout: the request thread is released while the order waits in the checkout pipeline,
+    // and the response is resumed once the order is persisted. 503 with Retry-After when the pipeline is full,
+    // or when the checkout had not started by the timeout and was withdrawn. A checkout already running by then
+    // gets one more timeout period; if it is still not done, 202 Accepted points at the order history, since the
+    // order may yet be placed.
+    @POST
+    @Path("/async")
+    public void createOrderAsync(
+            @PathParam("customerId") long customerId,
+            @Context UriInfo uriInfo,
+            @Suspended AsyncResponse asyncResponse) {
+        // Check if customer exists
+        if (!dataStore.customerExists(customerId)) {
+            throw new CustomerNotFoundException(customerId);
+        }
+
+        // Check if cart exists and is not empty
+        Cart cart = dataStore.getCart(customerId);
+        if (cart == null || cart.isEmpty()) {
+            throw new CartNotFoundException(customerId);
+        }
+
+        // UriInfo belongs to the request thread, so resolve the orders URI before suspending
+        URI orders = uriInfo.getBaseUriBuilder().path(OrderResource.class).build(customerId);
+        CheckoutPipeline pipeline = CheckoutPipeline.getInstance();
+        CompletableFuture<Order> checkout = pipeline.submit(customerId, true);
+        AtomicBoolean extended = new AtomicBoolean();
+        asyncResponse.setTimeoutHandler(response -> {
+            // A withdrawn checkout fails with ServiceBusyException, which resumes the response below
+            if (pipeline.withdraw(checkout)) {
+                return;
+            }
+            if (extended.compareAndSet(false, true)) {
+                response.setTimeout(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } else {
+                response.resume(Response.accepted().location(orders).build());
+            }
+        });
+        asyncResponse.setTimeout(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        checkout.whenComplete((order, failure) -> {
+            if (failure != null) {
+                asyncResponse.resume(failure);
+            } else if (order == null) {
+                asyncResponse.resume(new InvalidInputException("Failed to create order. The cart is empty."));
+            } else {
+                URI uri = UriBuilder.fromUri(orders).path(String.valueOf(order.getId())).build();
+                asyncResponse.resume(Response.created(uri).entity(order).build());
+            }
+        });
+    }
+
+    // Waits a bounded time for a checkout, like the asynchronous endpoint: one that has not started by then is
+    // withdrawn and fails with ServiceBusyException (503), one already running gets one more timeout period.
+    // Throws TimeoutException if even that runs out.
+    private static Order awaitCheckout(CompletableFuture<Order> checkout) throws TimeoutException {
+        try {
+            try {
+                return checkout.get(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                CheckoutPipeline.getInstance().withdraw(checkout);
+                return checkout.get(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceBusyException("Checkout was interrupted. Check the order history before retrying.", 1);
+        }
+    }
+
+    // Order history, newest first; page backwards with ?before=<orderId>
     @GET
-    public List<Order> getCustomerOrders(@PathParam("customerId") long customerId) {
+    public Response getCustomerOrders(
+            @PathParam("customerId") long customerId,
+            @QueryParam("before") @DefaultValue("9223372036854775807") long before,
+            @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit,
+            @Context UriInfo uriInfo) {
         // Check if customer exists
         if (!dataStore.customerExists(customerId)) {
             throw new CustomerNotFoundException(customerId);
         }
+        Pagination.validateLimit(limit);
 
-        return dataStore.getCustomerOrders(customerId);
+        List<Order> orders = dataStore.getCustomerOrders(customerId, before, limit);
+        return Pagination.page(new GenericEntity<List<Order>>(orders) {}, limit, "before", Order::getId, uriInfo);
     }
 
     @GET
     @Path("/{orderId}")
-    public Order getOrder(
+    public Response getOrder(
             @PathParam("customerId") long customerId,
-            @PathParam("orderId") long orderId) {
+            @PathParam("orderId") long orderId,
+            @Context Request request) {
 
         // Check if customer exists
         if (!dataStore.customerExists(customerId)) {
@@ -72,6 +178,6 @@ public class OrderResource {
             throw new BookNotFoundException(orderId);
         }
 
-        return order;
+        return EntityTags.ok(request, order, EntityTags.of(request, order.getVersion()));
     }
 }
\ No newline at end of file
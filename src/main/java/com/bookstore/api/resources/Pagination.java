@@ -0,0 +1,43 @@
+package com.bookstore.api.resources;
+
+import com.bookstore.api.exceptions.InvalidInputException;
+
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+// Shared handling of keyset pagination parameters (?after=<id>&limit=<n>) for collection endpoints
+final class Pagination {
+    static final String DEFAULT_LIMIT = "100";
+    static final int MAX_LIMIT = 1000;
+
+    private Pagination() {}
+
+    static void validateLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new InvalidInputException("Limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+    }
+
+    // Builds the page response; a full page carries a Link header pointing at the next page.
+    // The entity keeps its generic type so ?fields= projection can resolve the element class.
+    static <T> Response page(GenericEntity<List<T>> entity, int limit, ToLongFunction<T> idOf, UriInfo uriInfo) {
+        return page(entity, limit, "after", idOf, uriInfo);
+    }
+
+    // Same, for collections whose cursor parameter is not "after" (e.g. newest-first "before")
+    static <T> Response page(GenericEntity<List<T>> entity, int limit, String cursorParam,
+                             ToLongFunction<T> idOf, UriInfo uriInfo) {
+        List<T> items = entity.getEntity();
+        Response.ResponseBuilder response = Response.ok(entity);
+        if (items.size() == limit) {
+            long lastId = idOf.applyAsLong(items.get(items.size() - 1));
+            URI next = uriInfo.getRequestUriBuilder().replaceQueryParam(cursorParam, lastId).build();
+            response.link(next, "next");
+        }
+        return response.build();
+    }
+}
@@ -0,0 +1,42 @@
+package com.bookstore.api.resources;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import javax.ws.rs.core.GenericEntity;
+import java.io.UncheckedIOException;
+
+// A response body already encoded as JSON; PreEncodedJsonWriter copies it to the response as is
+public final class PreEncodedJson {
+    // Jersey's field projection marks every entity with a filter id on the shared mapper; cached bodies are never
+    // projected, so unknown filters fall back to writing every field
+    private static final ObjectWriter WRITER = JsonMapperResolver.MAPPER.writer(
+            new SimpleFilterProvider().setFailOnUnknownId(false));
+
+    private final byte[] bytes;
+
+    private PreEncodedJson(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static PreEncodedJson encode(Object entity) {
+        if (entity instanceof GenericEntity) {
+            entity = ((GenericEntity<?>) entity).getEntity();
+        }
+        try {
+            return new PreEncodedJson(WRITER.writeValueAsBytes(entity));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Shared, never modified
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int length() {
+        return bytes.length;
+    }
+}
@@ -0,0 +1,34 @@
+package com.bookstore.api.resources;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+// Writes cached JSON bytes straight to the response stream, without Jackson
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class PreEncodedJsonWriter implements MessageBodyWriter<PreEncodedJson> {
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == PreEncodedJson.class;
+    }
+
+    @Override
+    public long getSize(PreEncodedJson json, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return json.length();
+    }
+
+    @Override
+    public void writeTo(PreEncodedJson json, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        entityStream.write(json.bytes());
+    }
+}
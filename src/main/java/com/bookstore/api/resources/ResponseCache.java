@@ -0,0 +1,285 @@
+package com.bookstore.api.resources;
+
+import com.bookstore.api.metrics.Metrics;
+
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.UriInfo;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Bounded cache of JSON responses, encoded once per version of what they show, so repeated reads of a hot book or
+// author's book list skip Jackson. Entries are keyed by id and remember the version stamp they were encoded at; a
+// lookup with any other stamp misses and replaces the entry, so every DataStore write invalidates exactly the
+// responses it changes. Eviction is a segmented LRU by bytes: entries start on probation and are protected from
+// their second hit, so a one-off scan over many books cannot push out the hot ones.
+//
+// Lookups read a concurrent map and take no lock. A hit is noted in a small lossy buffer of the stripe, one of
+// several picked by thread so hot lookups on different cores do not all bump one counter, and the LRU order is
+// brought up to date from the buffers by whichever thread fills one and finds the stripe lock free, or by the
+// next write. Hits that overflow a buffer are dropped, which only blurs recency under heavy load.
+final class ResponseCache {
+    // Total heap for cached bytes; 3/4 go to single books, 1/4 to author book lists. 0 disables caching.
+    static final String SIZE_PROPERTY = "bookstore.response.cache.mb";
+
+    private static final long BUDGET = Long.getLong(SIZE_PROPERTY, 64) * 1024 * 1024;
+    static final ResponseCache BOOKS = new ResponseCache("books", BUDGET / 4 * 3);
+    static final ResponseCache AUTHOR_BOOKS = new ResponseCache("author_books", BUDGET / 4);
+
+    // Independently locked stripes (power of two), each with an even share of the budget
+    private static final int STRIPES = 16;
+    // Heap an entry takes besides its bytes: nodes of the lookup and LRU maps, key, entry and array headers
+    private static final int ENTRY_OVERHEAD = 160;
+    // Read buffers per stripe, one per core up to 8 (power of two), and hits each holds before they are applied to
+    // the LRU order (power of two). 16 compressed references fill one cache line, so buffers share no lines.
+    private static final int READ_BUFFERS =
+            Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int READ_BUFFER = 16;
+    // Longs between two buffers' write counters, a cache line apart
+    private static final int COUNTER_SPACING = 8;
+    // Share of a stripe that protected entries may fill
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final String name;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ResponseCache(String name, long maxBytes) {
+        this.name = name;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(maxBytes / STRIPES);
+        }
+    }
+
+    // The response body for id at version: cached JSON, encoded from entity on a miss. A request projecting
+    // fields with ?fields= or asking for CBOR gets the entity itself instead, for Jersey to filter or encode.
+    Object get(Request request, UriInfo uriInfo, long id, long version, Supplier<?> entity) {
+        if (uriInfo.getQueryParameters().containsKey("fields") || CborProvider.isSelected(request)) {
+            return entity.get();
+        }
+        return get(id, version, entity);
+    }
+
+    // The cached JSON for id at version, encoded from entity on a miss
+    PreEncodedJson get(long id, long version, Supplier<?> entity) {
+        Stripe stripe = stripes[(int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1)];
+        PreEncodedJson json = stripe.get(id, version);
+        if (json != null) {
+            hits.increment();
+            return json;
+        }
+        misses.increment();
+        json = PreEncodedJson.encode(entity.get());
+        stripe.put(id, version, json);
+        return json;
+    }
+
+    private static final class Entry {
+        final long id;
+        final long version;
+        final PreEncodedJson json;
+        final long size;
+
+        Entry(long id, long version, PreEncodedJson json) {
+            this.id = id;
+            this.version = version;
+            this.json = json;
+            this.size = json.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    private final class Stripe {
+        private final long maxBytes;
+        private final long maxProtectedBytes;
+        private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+        // READ_BUFFERS buffers of READ_BUFFER slots each, and the count of hits written to each buffer
+        private final AtomicReferenceArray<Entry> readBuffers =
+                new AtomicReferenceArray<>(READ_BUFFERS * READ_BUFFER);
+        private final AtomicLongArray readCounts = new AtomicLongArray(READ_BUFFERS * COUNTER_SPACING);
+        // Guards the LRU order below; lookups never take it
+        private final ReentrantLock lock = new ReentrantLock();
+        // Access ordered, least recently used first
+        private final LinkedHashMap<Long, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = (long) (maxBytes * PROTECTED_SHARE);
+        }
+
+        PreEncodedJson get(long id, long version) {
+            Entry entry = entries.get(id);
+            if (entry == null || entry.version != version) {
+                return null;
+            }
+            int buffer = (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32) & (READ_BUFFERS - 1);
+            int slot = (int) readCounts.getAndIncrement(buffer * COUNTER_SPACING) & (READ_BUFFER - 1);
+            readBuffers.lazySet(buffer * READ_BUFFER + slot, entry);
+            if (slot == READ_BUFFER - 1 && lock.tryLock()) {
+                try {
+                    drainReads();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return entry.json;
+        }
+
+        void put(long id, long version, PreEncodedJson json) {
+            Entry entry = new Entry(id, version, json);
+            lock.lock();
+            try {
+                drainReads();
+                remove(id);
+                // An entry taking a large share of the stripe would evict many others
+                if (entry.size > maxBytes / 8) {
+                    return;
+                }
+                entries.put(id, entry);
+                probation.put(id, entry);
+                probationBytes += entry.size;
+                while (probationBytes + protectedBytes > maxBytes) {
+                    LinkedHashMap<Long, Entry> victims = probation.isEmpty() ? protectedEntries : probation;
+                    Iterator<Entry> eldest = victims.values().iterator();
+                    Entry evicted = eldest.next();
+                    eldest.remove();
+                    entries.remove(evicted.id, evicted);
+                    if (victims == probation) {
+                        probationBytes -= evicted.size;
+                    } else {
+                        protectedBytes -= evicted.size;
+                    }
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Applies buffered hits to the LRU order; the lock is held
+        private void drainReads() {
+            for (int i = 0; i < READ_BUFFERS * READ_BUFFER; i++) {
+                Entry entry = readBuffers.getAndSet(i, null);
+                if (entry != null) {
+                    recordHit(entry);
+                }
+            }
+        }
+
+        // A hit moves a protected entry to the most recently used end. A hit on probation promotes the entry,
+        // demoting the least recently used protected entries back to probation. Replaced entries are skipped.
+        private void recordHit(Entry entry) {
+            if (protectedEntries.get(entry.id) == entry || probation.get(entry.id) != entry) {
+                return;
+            }
+            probation.remove(entry.id);
+            probationBytes -= entry.size;
+            protectedEntries.put(entry.id, entry);
+            protectedBytes += entry.size;
+            Iterator<Map.Entry<Long, Entry>> eldest = protectedEntries.entrySet().iterator();
+            while (protectedBytes > maxProtectedBytes) {
+                Map.Entry<Long, Entry> demoted = eldest.next();
+                eldest.remove();
+                protectedBytes -= demoted.getValue().size;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationBytes += demoted.getValue().size;
+            }
+        }
+
+        private void remove(long id) {
+            entries.remove(id);
+            Entry removed = probation.remove(id);
+            if (removed != null) {
+                probationBytes -= removed.size;
+            }
+            removed = protectedEntries.remove(id);
+            if (removed != null) {
+                protectedBytes -= removed.size;
+            }
+        }
+
+        long bytes() {
+            lock.lock();
+            try {
+                return probationBytes + protectedBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int entries() {
+            return entries.size();
+        }
+    }
+
+    // Approximate heap held by cached responses
+    long bytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += stripe.bytes();
+        }
+        return bytes;
+    }
+
+    int entries() {
+        int entries = 0;
+        for (Stripe stripe : stripes) {
+            entries += stripe.entries();
+        }
+        return entries;
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    // Samples of both caches for the metrics endpoint
+    static void writeMetrics(StringBuilder out) {
+        ResponseCache[] caches = {BOOKS, AUTHOR_BOOKS};
+        out.append("# HELP bookstore_response_cache_requests_total Lookups of pre-encoded responses by result\n");
+        out.append("# TYPE bookstore_response_cache_requests_total counter\n");
+        for (ResponseCache cache : caches) {
+            Metrics.appendSample(out, "bookstore_response_cache_requests_total", cache.labels() + ",result=\"hit\"",
+                    cache.hits.sum());
+            Metrics.appendSample(out, "bookstore_response_cache_requests_total", cache.labels() + ",result=\"miss\"",
+                    cache.misses.sum());
+        }
+        out.append("# HELP bookstore_response_cache_hit_ratio Share of lookups answered from the cache since start\n");
+        out.append("# TYPE bookstore_response_cache_hit_ratio gauge\n");
+        for (ResponseCache cache : caches) {
+            long hits = cache.hits.sum();
+            long total = hits + cache.misses.sum();
+            Metrics.appendSample(out, "bookstore_response_cache_hit_ratio", cache.labels(),
+                    total == 0 ? 0 : (double) hits / total);
+        }
+        out.append("# HELP bookstore_response_cache_evictions_total Entries evicted to stay within the size limit\n");
+        out.append("# TYPE bookstore_response_cache_evictions_total counter\n");
+        for (ResponseCache cache : caches) {
+            Metrics.appendSample(out, "bookstore_response_cache_evictions_total", cache.labels(), cache.evictions());
+        }
+        out.append("# HELP bookstore_response_cache_bytes Approximate heap held by cached responses\n");
+        out.append("# TYPE bookstore_response_cache_bytes gauge\n");
+        for (ResponseCache cache : caches) {
+            Metrics.appendSample(out, "bookstore_response_cache_bytes", cache.labels(), cache.bytes());
+        }
+        out.append("# HELP bookstore_response_cache_entries Cached responses\n");
+        out.append("# TYPE bookstore_response_cache_entries gauge\n");
+        for (ResponseCache cache : caches) {
+            Metrics.appendSample(out, "bookstore_response_cache_entries", cache.labels(), cache.entries());
+        }
+    }
+
+    private String labels() {
+        return "cache=\"" + name + "\"";
+    }
+}
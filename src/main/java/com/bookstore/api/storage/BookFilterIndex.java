@@ -0,0 +1,616 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.BookFacets;
+import com.bookstore.api.models.BookFilter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+// Secondary indexes behind the GET /books filters. Price (in cents), publication year and author each have a
+// sorted index of (value << 32 | book id) keys, so a range of values is a contiguous run of keys, and a column
+// of each book's value by id. Book ids are handed out sequentially, so a plain BitSet is dense: one bit per id
+// ever assigned. Stock changes too often to sort by, so in-stock books are kept as a bitmap of their own.
+//
+// A page of matches takes its candidates in id order from the narrowest source and checks each against the other
+// conditions through the columns, stopping at the limit. Facets count every book, so they turn each condition
+// into a bitmap over book ids and intersect the bitmaps.
+//
+// Each dimension has its own read-write lock; the stock lock also guards the bitmap of live books. Writers lock
+// only the dimensions whose value changed, one at a time, so a checkout flipping a stock bit does not wait for a
+// price change. A new book becomes live only after its keys are in place, and a removed one stops being live
+// before they go, so queries never see a book missing from a dimension.
+final class BookFilterIndex {
+    // Upper bounds, in cents, of the price facet ranges; a last range takes everything above
+    private static final long[] PRICE_BUCKETS = {1000, 2000, 5000, 10000};
+    private static final int MAX_AUTHOR_FACETS = 20;
+
+    // The dimensions below SORTED have a sorted index and a column
+    private static final int PRICE = 0;
+    private static final int YEAR = 1;
+    private static final int AUTHOR = 2;
+    private static final int SORTED = 3;
+    private static final int STOCK = 3;
+    private static final int DIMENSIONS = 4;
+
+    private final SortedKeys byPrice = new SortedKeys();
+    private final SortedKeys byYear = new SortedKeys();
+    private final SortedKeys byAuthor = new SortedKeys();
+    private final SortedKeys[] sorted = {byPrice, byYear, byAuthor};
+    // Value of each sorted dimension by book id; stale for books that are no longer live
+    private final int[][] columns = new int[SORTED][0];
+    private final BitSet live = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private int liveCount;
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[DIMENSIONS];
+
+    BookFilterIndex() {
+        for (int dimension = 0; dimension < DIMENSIONS; dimension++) {
+            locks[dimension] = new ReentrantReadWriteLock();
+        }
+    }
+
+    // A filter as an inclusive range of values per sorted dimension, and the stock condition
+    private static final class Query {
+        final boolean[] constrained = new boolean[SORTED];
+        final long[] from = new long[SORTED];
+        final long[] to = new long[SORTED];
+        final Boolean inStock;
+
+        Query(BookFilter filter) {
+            if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+                long from = filter.getMinPrice() != null ? (long) Math.ceil(filter.getMinPrice() * 100 - 1e-6) : 0;
+                long to = filter.getMaxPrice() != null
+                        ? (long) Math.floor(filter.getMaxPrice() * 100 + 1e-6) : Integer.MAX_VALUE;
+                constrain(PRICE, Math.max(0, from), Math.min(Integer.MAX_VALUE, to));
+            }
+            if (filter.getYearFrom() != null || filter.getYearTo() != null) {
+                constrain(YEAR, filter.getYearFrom() != null ? filter.getYearFrom() : Integer.MIN_VALUE,
+                        filter.getYearTo() != null ? filter.getYearTo() : Integer.MAX_VALUE);
+            }
+            if (filter.getAuthorId() != null) {
+                long author = filter.getAuthorId();
+                if (author < 0 || author > Integer.MAX_VALUE) {
+                    constrain(AUTHOR, 1, 0);
+                } else {
+                    constrain(AUTHOR, author, author);
+                }
+            }
+            inStock = filter.getInStock();
+        }
+
+        private void constrain(int dimension, long from, long to) {
+            constrained[dimension] = true;
+            this.from[dimension] = from;
+            this.to[dimension] = to;
+        }
+
+        boolean matchesNothing() {
+            for (int dimension = 0; dimension < SORTED; dimension++) {
+                if (constrained[dimension] && from[dimension] > to[dimension]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Sorted longs in chunks. A chunk is filed under a lower bound of its keys, and all of its keys are below
+    // the bound of the next chunk, so floorEntry() finds the chunk a key belongs in.
+    private static final class SortedKeys {
+        private static final int CHUNK = 512;
+
+        private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+
+        private static final class Chunk {
+            long[] keys;
+            int size;
+
+            Chunk(long[] keys, int size) {
+                this.keys = keys;
+                this.size = size;
+            }
+
+            // Index of the first key not below the given one
+            int lowerBound(long key) {
+                int i = Arrays.binarySearch(keys, 0, size, key);
+                return i < 0 ? -i - 1 : i;
+            }
+        }
+
+        void add(long key) {
+            Map.Entry<Long, Chunk> entry = chunks.floorEntry(key);
+            if (entry == null) {
+                entry = chunks.firstEntry();
+                if (entry == null) {
+                    chunks.put(key, new Chunk(new long[] {key, 0, 0, 0}, 1));
+                    return;
+                }
+                // New smallest key: lower the first chunk's bound
+                chunks.remove(entry.getKey());
+                chunks.put(key, entry.getValue());
+            }
+            Chunk chunk = entry.getValue();
+            int i = chunk.lowerBound(key);
+            if (i < chunk.size && chunk.keys[i] == key) {
+                return;
+            }
+            if (chunk.size == chunk.keys.length) {
+                chunk.keys = Arrays.copyOf(chunk.keys, Math.min(2 * chunk.size, 2 * CHUNK));
+            }
+            System.arraycopy(chunk.keys, i, chunk.keys, i + 1, chunk.size - i);
+            chunk.keys[i] = key;
+            chunk.size++;
+            if (chunk.size == 2 * CHUNK) {
+                Chunk upper = new Chunk(Arrays.copyOfRange(chunk.keys, CHUNK, 2 * CHUNK), CHUNK);
+                chunk.size = CHUNK;
+                chunks.put(upper.keys[0], upper);
+            }
+        }
+
+        void remove(long key) {
+            Map.Entry<Long, Chunk> entry = chunks.floorEntry(key);
+            if (entry == null) {
+                return;
+            }
+            Chunk chunk = entry.getValue();
+            int i = chunk.lowerBound(key);
+            if (i < chunk.size && chunk.keys[i] == key) {
+                System.arraycopy(chunk.keys, i + 1, chunk.keys, i, chunk.size - i - 1);
+                chunk.size--;
+                if (chunk.size == 0) {
+                    chunks.remove(entry.getKey());
+                }
+            }
+        }
+
+        // Replaces the contents with the first count keys of the array, which must be sorted
+        void load(long[] sorted, int count) {
+            chunks.clear();
+            for (int start = 0; start < count; start += CHUNK) {
+                int end = Math.min(count, start + CHUNK);
+                chunks.put(sorted[start], new Chunk(Arrays.copyOfRange(sorted, start, end), end - start));
+            }
+        }
+
+        // Smallest key not below the given one, or null if there is none
+        Long ceiling(long key) {
+            Map.Entry<Long, Chunk> entry = chunks.floorEntry(key);
+            if (entry != null) {
+                Chunk chunk = entry.getValue();
+                int i = chunk.lowerBound(key);
+                if (i < chunk.size) {
+                    return chunk.keys[i];
+                }
+                entry = chunks.higherEntry(entry.getKey());
+            } else {
+                entry = chunks.firstEntry();
+            }
+            return entry != null ? entry.getValue().keys[0] : null;
+        }
+
+        // Number of keys from..to (inclusive) whose book id is in ids. A loop rather than forEach(), since
+        // facets count every key of the index.
+        long count(long from, long to, BitSet ids) {
+            long count = 0;
+            Long start = chunks.floorKey(from);
+            for (Chunk chunk : chunks.subMap(start != null ? start : from, true, to, true).values()) {
+                for (int i = chunk.lowerBound(from); i < chunk.size && chunk.keys[i] <= to; i++) {
+                    if (ids.get((int) chunk.keys[i])) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        // Number of keys from..to (inclusive), or bound if there are at least that many; looks at the chunks, not
+        // at every key
+        long size(long from, long to, long bound) {
+            long size = 0;
+            Long start = chunks.floorKey(from);
+            for (Chunk chunk : chunks.subMap(start != null ? start : from, true, to, true).values()) {
+                int end = chunk.lowerBound(to);
+                if (end < chunk.size && chunk.keys[end] == to) {
+                    end++;
+                }
+                size += Math.max(0, end - chunk.lowerBound(from));
+                if (size >= bound) {
+                    return bound;
+                }
+            }
+            return size;
+        }
+
+        // Calls the action for every key from..to (inclusive) in ascending order, until it returns false
+        void forEach(long from, long to, LongPredicate action) {
+            Long start = chunks.floorKey(from);
+            for (Chunk chunk : chunks.subMap(start != null ? start : from, true, to, true).values()) {
+                for (int i = chunk.lowerBound(from); i < chunk.size && chunk.keys[i] <= to; i++) {
+                    if (!action.test(chunk.keys[i])) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    // Re-indexes a book: previous is null for a new book, book null to remove it
+    void update(Book previous, Book book) {
+        boolean had = previous != null;
+        boolean has = book != null;
+        int id = bit(has ? book.getId() : previous.getId());
+        if (!has) {
+            setLive(id, false, false);
+        }
+        reindex(PRICE, id, had, had ? cents(previous.getPrice()) : 0, has, has ? cents(book.getPrice()) : 0);
+        reindex(YEAR, id, had, had ? previous.getPublicationYear() : 0, has, has ? book.getPublicationYear() : 0);
+        reindex(AUTHOR, id, had, had ? bit(previous.getAuthorId()) : 0, has, has ? bit(book.getAuthorId()) : 0);
+        if (has) {
+            setLive(id, true, book.getStock() > 0);
+        }
+    }
+
+    private void reindex(int dimension, int id, boolean had, long oldValue, boolean has, long newValue) {
+        if (had && has && oldValue == newValue) {
+            return;
+        }
+        locks[dimension].writeLock().lock();
+        try {
+            if (had) {
+                sorted[dimension].remove(key(oldValue, id));
+            }
+            if (has) {
+                sorted[dimension].add(key(newValue, id));
+                setColumn(dimension, id, newValue);
+            }
+        } finally {
+            locks[dimension].writeLock().unlock();
+        }
+    }
+
+    // Called with the dimension's write lock held
+    private void setColumn(int dimension, int id, long value) {
+        int[] column = columns[dimension];
+        if (id >= column.length) {
+            column = Arrays.copyOf(column, Math.max(id + 1, 2 * column.length));
+            columns[dimension] = column;
+        }
+        column[id] = (int) value;
+    }
+
+    private void setLive(int id, boolean live, boolean inStock) {
+        locks[STOCK].writeLock().lock();
+        try {
+            if (this.live.get(id) != live) {
+                liveCount += live ? 1 : -1;
+            }
+            this.live.set(id, live);
+            this.inStock.set(id, inStock);
+        } finally {
+            locks[STOCK].writeLock().unlock();
+        }
+    }
+
+    // Re-reads the stock of an indexed book after it may have crossed zero
+    void updateStock(Book book) {
+        locks[STOCK].writeLock().lock();
+        try {
+            inStock.set(bit(book.getId()), book.getStock() > 0);
+        } finally {
+            locks[STOCK].writeLock().unlock();
+        }
+    }
+
+    // Replaces the index with the given books. Sorting all keys once is much cheaper than inserting them one
+    // by one, which matters after a snapshot load.
+    void rebuild(Iterable<Book> source, int expected) {
+        long[] prices = new long[expected];
+        long[] years = new long[expected];
+        long[] authors = new long[expected];
+        int count = 0;
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+        try {
+            live.clear();
+            inStock.clear();
+            liveCount = 0;
+            for (Book book : source) {
+                if (count == prices.length) {
+                    int grown = Math.max(16, 2 * count);
+                    prices = Arrays.copyOf(prices, grown);
+                    years = Arrays.copyOf(years, grown);
+                    authors = Arrays.copyOf(authors, grown);
+                }
+                int id = bit(book.getId());
+                prices[count] = key(cents(book.getPrice()), id);
+                years[count] = key(book.getPublicationYear(), id);
+                authors[count] = key(bit(book.getAuthorId()), id);
+                setColumn(PRICE, id, cents(book.getPrice()));
+                setColumn(YEAR, id, book.getPublicationYear());
+                setColumn(AUTHOR, id, bit(book.getAuthorId()));
+                count++;
+                if (!live.get(id)) {
+                    liveCount++;
+                }
+                live.set(id);
+                inStock.set(id, book.getStock() > 0);
+            }
+            Arrays.parallelSort(prices, 0, count);
+            Arrays.parallelSort(years, 0, count);
+            Arrays.parallelSort(authors, 0, count);
+            byPrice.load(prices, count);
+            byYear.load(years, count);
+            byAuthor.load(authors, count);
+        } finally {
+            for (ReentrantReadWriteLock lock : locks) {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Ids of the matching books above afterId, ascending, at most limit of them. The candidates come in id order
+    // from the narrowest source and the search stops at the limit-th match:
+    //   - a narrow range: its keys, collected into a bitmap, or read in order if it is a single value
+    //   - a single value (an author, say), even if it is not narrow: its keys are already in id order
+    //   - otherwise the live, in-stock or sold-out books themselves, as many of them match
+    long[] find(BookFilter filter, long afterId, int limit) {
+        Query query = new Query(filter);
+        if (afterId >= Integer.MAX_VALUE || limit <= 0 || query.matchesNothing()) {
+            return new long[0];
+        }
+        int start = (int) Math.max(0, afterId + 1);
+        long[] ids = new long[limit];
+        int[] count = {0};
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.readLock().lock();
+        }
+        try {
+            // A range is narrow if collecting it is cheaper than scanning, which looks at about
+            // limit * liveCount / size books to fill the page
+            int narrowest = -1;
+            long narrowestSize = (long) Math.sqrt((double) limit * liveCount);
+            int single = -1;
+            for (int dimension = 0; dimension < SORTED; dimension++) {
+                if (query.constrained[dimension]) {
+                    long from = query.from[dimension];
+                    long to = query.to[dimension];
+                    if (from == to && single < 0) {
+                        single = dimension;
+                    }
+                    long size = sorted[dimension].size(lowest(from), highest(to), narrowestSize);
+                    if (size < narrowestSize) {
+                        narrowest = dimension;
+                        narrowestSize = size;
+                    }
+                }
+            }
+
+            if (narrowest >= 0 && query.from[narrowest] != query.to[narrowest]) {
+                BitSet candidates = new BitSet();
+                sorted[narrowest].forEach(lowest(query.from[narrowest]), highest(query.to[narrowest]), key -> {
+                    if ((int) key >= start) {
+                        candidates.set((int) key);
+                    }
+                    return true;
+                });
+                collect(query, candidates, start, ids, count);
+            } else if (narrowest >= 0 || single >= 0) {
+                int dimension = narrowest >= 0 ? narrowest : single;
+                long value = query.from[dimension];
+                sorted[dimension].forEach(key(value, start), highest(value), key -> {
+                    int id = (int) key;
+                    if (matches(query, id)) {
+                        ids[count[0]++] = id;
+                    }
+                    return count[0] < limit;
+                });
+            } else if (Boolean.FALSE.equals(query.inStock)) {
+                // Sold-out books are the gaps in the in-stock bitmap
+                for (int id = inStock.nextClearBit(start), end = live.length(); id < end && count[0] < limit;
+                     id = inStock.nextClearBit(id + 1)) {
+                    if (matches(query, id)) {
+                        ids[count[0]++] = id;
+                    }
+                }
+            } else {
+                collect(query, query.inStock != null ? inStock : live, start, ids, count);
+            }
+        } finally {
+            for (int dimension = DIMENSIONS - 1; dimension >= 0; dimension--) {
+                locks[dimension].readLock().unlock();
+            }
+        }
+        return Arrays.copyOf(ids, count[0]);
+    }
+
+    // Adds the candidates from start on that match the query, in id order, until ids is full
+    private void collect(Query query, BitSet candidates, int start, long[] ids, int[] count) {
+        for (int id = candidates.nextSetBit(start); id >= 0 && count[0] < ids.length;
+             id = id == Integer.MAX_VALUE ? -1 : candidates.nextSetBit(id + 1)) {
+            if (matches(query, id)) {
+                ids[count[0]++] = id;
+            }
+        }
+    }
+
+    // Checks one book against every condition; called with all read locks held
+    private boolean matches(Query query, int id) {
+        if (!live.get(id) || (query.inStock != null && inStock.get(id) != query.inStock)) {
+            return false;
+        }
+        for (int dimension = 0; dimension < SORTED; dimension++) {
+            if (query.constrained[dimension]) {
+                int[] column = columns[dimension];
+                if (id >= column.length || column[id] < query.from[dimension] || column[id] > query.to[dimension]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    BookFacets facets(BookFilter filter) {
+        BookFacets facets = new BookFacets();
+        BitSet[] conditions = conditions(new Query(filter));
+        facets.setTotal(intersect(conditions, -1).cardinality());
+
+        // Every bucket is a run of keys in the sorted index of its dimension
+        BitSet priceOthers = intersect(conditions, PRICE);
+        locks[PRICE].readLock().lock();
+        try {
+            for (int bucket = 0; bucket <= PRICE_BUCKETS.length; bucket++) {
+                long from = bucket == 0 ? 0 : PRICE_BUCKETS[bucket - 1];
+                long to = bucket < PRICE_BUCKETS.length ? PRICE_BUCKETS[bucket] - 1 : Integer.MAX_VALUE;
+                String label = bucket < PRICE_BUCKETS.length ? from / 100 + "-" + (to + 1) / 100 : from / 100 + "+";
+                long count = byPrice.count(lowest(from), highest(to), priceOthers);
+                facets.getPrice().add(new BookFacets.FacetCount(label, count));
+            }
+        } finally {
+            locks[PRICE].readLock().unlock();
+        }
+
+        BitSet yearOthers = intersect(conditions, YEAR);
+        locks[YEAR].readLock().lock();
+        try {
+            for (Long key = byYear.ceiling(Long.MIN_VALUE); key != null; ) {
+                long decade = Math.floorDiv(key >> 32, 10) * 10;
+                long count = byYear.count(lowest(decade), highest(decade + 9), yearOthers);
+                if (count > 0) {
+                    facets.getPublicationYear().add(new BookFacets.FacetCount(decade + "-" + (decade + 9), count));
+                }
+                key = byYear.ceiling(lowest(decade + 10));
+            }
+        } finally {
+            locks[YEAR].readLock().unlock();
+        }
+
+        BitSet stockOthers = intersect(conditions, STOCK);
+        long total = stockOthers.cardinality();
+        locks[STOCK].readLock().lock();
+        try {
+            stockOthers.and(inStock);
+        } finally {
+            locks[STOCK].readLock().unlock();
+        }
+        long available = stockOthers.cardinality();
+        facets.getInStock().add(new BookFacets.FacetCount("true", available));
+        facets.getInStock().add(new BookFacets.FacetCount("false", total - available));
+
+        // Keep the authors with the most matches in a min-heap
+        BitSet authorOthers = intersect(conditions, AUTHOR);
+        Comparator<long[]> fewestFirst = (a, b) -> a[1] != b[1]
+                ? Long.compare(a[1], b[1]) : Long.compare(b[0], a[0]);
+        PriorityQueue<long[]> top = new PriorityQueue<>(fewestFirst);
+        locks[AUTHOR].readLock().lock();
+        try {
+            for (Long key = byAuthor.ceiling(Long.MIN_VALUE); key != null; ) {
+                long author = key >> 32;
+                long count = byAuthor.count(lowest(author), highest(author), authorOthers);
+                if (count > 0) {
+                    top.add(new long[] {author, count});
+                    if (top.size() > MAX_AUTHOR_FACETS) {
+                        top.poll();
+                    }
+                }
+                key = byAuthor.ceiling(lowest(author + 1));
+            }
+        } finally {
+            locks[AUTHOR].readLock().unlock();
+        }
+        long[][] authors = top.toArray(new long[0][]);
+        Arrays.sort(authors, fewestFirst.reversed());
+        for (long[] author : authors) {
+            facets.getAuthorId().add(new BookFacets.FacetCount(Long.toString(author[0]), author[1]));
+        }
+        return facets;
+    }
+
+    // One bitmap per dimension the filter constrains, null where it does not
+    private BitSet[] conditions(Query query) {
+        BitSet[] conditions = new BitSet[DIMENSIONS];
+        for (int dimension = 0; dimension < SORTED; dimension++) {
+            if (query.constrained[dimension]) {
+                conditions[dimension] = range(dimension, query.from[dimension], query.to[dimension]);
+            }
+        }
+        if (query.inStock != null) {
+            locks[STOCK].readLock().lock();
+            try {
+                BitSet stock = (BitSet) live.clone();
+                if (query.inStock) {
+                    stock.and(inStock);
+                } else {
+                    stock.andNot(inStock);
+                }
+                conditions[STOCK] = stock;
+            } finally {
+                locks[STOCK].readLock().unlock();
+            }
+        }
+        return conditions;
+    }
+
+    private BitSet range(int dimension, long from, long to) {
+        BitSet ids = new BitSet();
+        if (from <= to) {
+            locks[dimension].readLock().lock();
+            try {
+                sorted[dimension].forEach(lowest(from), highest(to), key -> {
+                    ids.set((int) key);
+                    return true;
+                });
+            } finally {
+                locks[dimension].readLock().unlock();
+            }
+        }
+        return ids;
+    }
+
+    // Books meeting every condition except the one of the skipped dimension
+    private BitSet intersect(BitSet[] conditions, int skip) {
+        BitSet result;
+        locks[STOCK].readLock().lock();
+        try {
+            result = (BitSet) live.clone();
+        } finally {
+            locks[STOCK].readLock().unlock();
+        }
+        for (int dimension = 0; dimension < DIMENSIONS; dimension++) {
+            if (dimension != skip && conditions[dimension] != null) {
+                result.and(conditions[dimension]);
+            }
+        }
+        return result;
+    }
+
+    // Value in the high half, book id in the low half; values fit in an int, so keys sort by value, then id
+    private static long key(long value, int id) {
+        return value << 32 | id;
+    }
+
+    // First and last possible key of a value
+    private static long lowest(long value) {
+        return value << 32;
+    }
+
+    private static long highest(long value) {
+        return value << 32 | 0xFFFFFFFFL;
+    }
+
+    private static long cents(double price) {
+        return Math.max(0, Math.min(Integer.MAX_VALUE, Math.round(price * 100)));
+    }
+
+    // Book and author ids are assigned sequentially and stay far below 2^31
+    private static int bit(long id) {
+        return Math.toIntExact(id);
+    }
+}
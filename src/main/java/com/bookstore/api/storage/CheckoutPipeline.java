@@ -0,0 +1,265 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.exceptions.ServiceBusyException;
+import com.bookstore.api.models.Order;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Single-writer checkout stage shared by the synchronous and asynchronous order endpoints, in the style of
+// the LMAX disruptor. Request threads claim a slot in a preallocated ring with one CAS and publish the
+// customer id into it; one stage thread applies everything published so far as a batch through
+// DataStore.createOrders. Only that thread ever reserves stock for a checkout, so a flash sale on a few
+// books no longer has request threads retrying compare-and-set on the same counters, and checkout throughput
+// does not depend on how many threads serve requests. Checkouts of one customer run in arrival order.
+//
+// The log records of a batch are appended back to back and group-committed by the write-ahead log. Results
+// complete on a small completion pool, which keeps response writing off the stage thread and the log writer.
+//
+// When the ring is full, submit() fails fast with ServiceBusyException (503 with Retry-After). A checkout still
+// waiting in the ring can be withdrawn, after which the stage thread skips it; once the stage thread has started
+// it, it runs to completion. A failure of one checkout, Errors included, fails only that checkout's future. Should
+// the stage thread die anyway, the pipeline fails fast: queued checkouts are withdrawn and submit() rejects.
+//   bookstore.checkout.queue.capacity  ring slots, rounded up to a power of two (default 4096)
+//   bookstore.checkout.retry.after.s   Retry-After sent with a rejection (default 1)
+public final class CheckoutPipeline {
+    private static final int MAX_BATCH = 256;
+    // Empty polls before the stage thread parks until a producer wakes it
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final Logger LOGGER = Logger.getLogger(CheckoutPipeline.class.getName());
+
+    private final DataStore dataStore;
+    private final int retryAfterSeconds;
+    private final ExecutorService completions;
+    private final LongAdder rejected = new LongAdder();
+
+    // Ring slots, indexed by sequence & mask. A slot holds sequence s once published[s & mask] == s.
+    private final int mask;
+    private final long[] customerIds;
+    private final boolean[] awaitDurable;
+    private final Checkout[] results;
+    private final AtomicLongArray published;
+
+    // Last sequence claimed by a producer, and last sequence the stage thread has taken out of the ring
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+
+    private final Thread stage;
+    private volatile boolean stageParked;
+    // Set once the stage thread has died; nothing is applied after that
+    private volatile Throwable stageFailure;
+
+    // Stage thread state: the batch being applied
+    private final long[] batchCustomerIds = new long[MAX_BATCH];
+    private final boolean[] batchAwaitDurable = new boolean[MAX_BATCH];
+    private final Checkout[] batchResults = new Checkout[MAX_BATCH];
+    private final Order[] batchOrders = new Order[MAX_BATCH];
+    private final Throwable[] batchFailures = new Throwable[MAX_BATCH];
+
+    private static class Holder {
+        private static final CheckoutPipeline INSTANCE = new CheckoutPipeline(DataStore.getInstance());
+    }
+
+    public static CheckoutPipeline getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private CheckoutPipeline(DataStore dataStore) {
+        this.dataStore = dataStore;
+        this.retryAfterSeconds = Integer.getInteger("bookstore.checkout.retry.after.s", 1);
+
+        int capacity = Integer.getInteger("bookstore.checkout.queue.capacity", 4096);
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = slots - 1;
+        this.customerIds = new long[slots];
+        this.awaitDurable = new boolean[slots];
+        this.results = new Checkout[slots];
+        this.published = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            published.set(i, -1);
+        }
+
+        AtomicInteger completionThreads = new AtomicInteger();
+        this.completions = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                runnable -> daemon(runnable, "checkout-completion-" + completionThreads.incrementAndGet()));
+        this.stage = daemon(this::run, "checkout-pipeline");
+        stage.setUncaughtExceptionHandler((thread, failure) -> stop(failure));
+        stage.start();
+    }
+
+    // The result of one checkout; whoever flips started first, the stage thread or withdraw(), decides its fate
+    private static final class Checkout extends CompletableFuture<Order> {
+        private final AtomicBoolean started = new AtomicBoolean();
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Queues a checkout. The future completes with the order, with null if the customer or the cart is gone
+    // by the time it runs, or exceptionally with the checkout failure (e.g. OutOfStockException).
+    // With awaitDurable the order is on disk by then whatever the fsync policy; without it the future
+    // completes as soon as the order exists, or once it is forced under the PER_WRITE policy.
+    public CompletableFuture<Order> submit(long customerId, boolean awaitDurable) {
+        if (stageFailure != null) {
+            rejected.increment();
+            throw new ServiceBusyException("Checkout is unavailable.", retryAfterSeconds);
+        }
+        long sequence;
+        do {
+            sequence = claimed.get() + 1;
+            // The slot is free once the stage thread has taken the request one lap behind
+            if (sequence - (mask + 1) > consumed) {
+                rejected.increment();
+                throw new ServiceBusyException("Too many checkouts in progress. Please retry shortly.", retryAfterSeconds);
+            }
+        } while (!claimed.compareAndSet(sequence - 1, sequence));
+
+        int slot = (int) sequence & mask;
+        Checkout result = new Checkout();
+        customerIds[slot] = customerId;
+        this.awaitDurable[slot] = awaitDurable;
+        results[slot] = result;
+        published.set(slot, sequence);
+        if (stageParked) {
+            LockSupport.unpark(stage);
+        }
+        return result;
+    }
+
+    // Takes a checkout returned by submit() out of the pipeline if the stage thread has not started it yet; its
+    // future then fails with ServiceBusyException and nothing is changed. Returns false if the checkout is
+    // already running or done, in which case its result stands.
+    public boolean withdraw(CompletableFuture<Order> checkout) {
+        if (!(checkout instanceof Checkout) || !((Checkout) checkout).started.compareAndSet(false, true)) {
+            return false;
+        }
+        checkout.completeExceptionally(
+                new ServiceBusyException("Checkout did not start in time. Please retry shortly.", retryAfterSeconds));
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            int taken = 0;
+            int count = 0;
+            while (taken < MAX_BATCH && published.get((int) (next + taken) & mask) == next + taken) {
+                int slot = (int) (next + taken) & mask;
+                Checkout result = results[slot];
+                results[slot] = null;
+                taken++;
+                // Withdrawn while waiting: its caller has been answered already
+                if (!result.started.compareAndSet(false, true)) {
+                    continue;
+                }
+                batchCustomerIds[count] = customerIds[slot];
+                batchAwaitDurable[count] = awaitDurable[slot];
+                batchResults[count] = result;
+                count++;
+            }
+            if (taken == 0) {
+                idle = awaitPublished(next, idle);
+                continue;
+            }
+            idle = 0;
+            next += taken;
+            // Hand the slots back to producers before applying the batch
+            consumed = next - 1;
+            if (count > 0) {
+                apply(count);
+            }
+        }
+    }
+
+    // Spins briefly, then parks until a producer publishes the given sequence; returns the new idle count
+    private int awaitPublished(long sequence, int idle) {
+        if (idle < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+            return idle + 1;
+        }
+        stageParked = true;
+        // Re-check after announcing the park, so a producer publishing in between is not missed
+        if (published.get((int) sequence & mask) != sequence) {
+            LockSupport.park(this);
+        }
+        stageParked = false;
+        return idle;
+    }
+
+    // Logs the failure, withdraws every checkout still in the ring and fails the batch the stage thread held
+    private void stop(Throwable failure) {
+        LOGGER.log(Level.SEVERE, "Checkout pipeline stage thread died; checkouts are rejected from now on", failure);
+        stageFailure = failure;
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Checkout result = batchResults[i];
+            if (result != null) {
+                result.completeExceptionally(failure);
+            }
+        }
+        for (Checkout result : results) {
+            if (result != null) {
+                withdraw(result);
+            }
+        }
+    }
+
+    private void apply(int count) {
+        CompletableFuture<Void> written;
+        try {
+            written = dataStore.createOrders(batchCustomerIds, count, batchOrders, batchFailures);
+        } catch (Throwable e) {
+            LOGGER.log(Level.SEVERE, "Checkout batch failed", e);
+            for (int i = 0; i < count; i++) {
+                CompletableFuture<Order> result = batchResults[i];
+                batchResults[i] = null;
+                result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        boolean durableOnReturn = dataStore.isDurableOnReturn();
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<Order> result = batchResults[i];
+            Order order = batchOrders[i];
+            Throwable failure = batchFailures[i];
+            batchResults[i] = null;
+            batchOrders[i] = null;
+            batchFailures[i] = null;
+
+            if (failure != null) {
+                completions.execute(() -> result.completeExceptionally(failure));
+            } else if (batchAwaitDurable[i] || durableOnReturn) {
+                written.whenCompleteAsync((ignored, writeFailure) -> {
+                    if (writeFailure != null) {
+                        result.completeExceptionally(writeFailure);
+                    } else {
+                        result.complete(order);
+                    }
+                }, completions);
+            } else {
+                completions.execute(() -> result.complete(order));
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.bookstore.api.storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+// Concurrent map from long keys to objects, for the entity maps of the DataStore: get() neither boxes the key
+// nor allocates. Keys are spread over lock-striped segments, each an open-addressing table of a long[] of keys
+// and an Object[] of values with linear probing. Writers hold their segment's lock; readers take none.
+//
+// A slot's key never changes once set, so a reader that finds the key reads that key's value. A removal only
+// clears the value, leaving the key in place until the table is rebuilt; ids are not reused, so few keys come
+// back. A rebuild copies the live entries into a new table and publishes it, and the old table is never written
+// again, so a reader still probing it sees the map as it was when the read began. Key 0 marks an empty slot and
+// is kept outside the table.
+final class ConcurrentLongMap<V> {
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    // The key and its current value, or null to remove the key
+    interface Remapping<V> {
+        V apply(long key, V value);
+    }
+
+    private final Segment<V>[] segments;
+    private final Collection<V> values = new AbstractCollection<V>() {
+        @Override
+        public Iterator<V> iterator() {
+            return new Values();
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentLongMap.this.size();
+        }
+    };
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ConcurrentLongMap() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    V get(long key) {
+        long hash = hash(key);
+        return segments[segmentIndex(hash)].get(key, hash);
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    V put(long key, V value) {
+        long hash = hash(key);
+        Segment<V> segment = lock(hash);
+        try {
+            return segment.put(key, hash, value);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    V remove(long key) {
+        long hash = hash(key);
+        Segment<V> segment = lock(hash);
+        try {
+            return segment.put(key, hash, null);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // Like ConcurrentHashMap.compute: atomic with respect to other writes of the key. The function must not write
+    // to this map: two computes writing each other's segment from inside would deadlock. Assertions check this.
+    V compute(long key, Remapping<V> remapping) {
+        long hash = hash(key);
+        Segment<V> segment = lock(hash);
+        try {
+            V updated = remapping.apply(key, segment.get(key, hash));
+            segment.put(key, hash, updated);
+            return updated;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    V computeIfPresent(long key, Remapping<V> remapping) {
+        long hash = hash(key);
+        Segment<V> segment = lock(hash);
+        try {
+            V current = segment.get(key, hash);
+            if (current == null) {
+                return null;
+            }
+            V updated = remapping.apply(key, current);
+            segment.put(key, hash, updated);
+            return updated;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    V computeIfAbsent(long key, LongFunction<V> create) {
+        long hash = hash(key);
+        V current = segments[segmentIndex(hash)].get(key, hash);
+        if (current != null) {
+            return current;
+        }
+        Segment<V> segment = lock(hash);
+        try {
+            current = segment.get(key, hash);
+            if (current == null) {
+                current = create.apply(key);
+                if (current != null) {
+                    segment.put(key, hash, current);
+                }
+            }
+            return current;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // Takes the segment's lock for a write. A thread holds at most one segment lock, so writers cannot deadlock.
+    private Segment<V> lock(long hash) {
+        assert !holdsSegmentLock() : "ConcurrentLongMap written from inside one of its own remapping functions";
+        Segment<V> segment = segments[segmentIndex(hash)];
+        segment.lock.lock();
+        return segment;
+    }
+
+    private boolean holdsSegmentLock() {
+        for (Segment<V> segment : segments) {
+            if (segment.lock.isHeldByCurrentThread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    // Live, read-only view; weakly consistent like ConcurrentHashMap.values()
+    Collection<V> values() {
+        return values;
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    // The segment comes from the high bits, the slot from the low ones
+    private static int segmentIndex(long hash) {
+        return (int) (hash >>> 60) & (SEGMENTS - 1);
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment<V> {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile Table table = new Table(INITIAL_CAPACITY);
+        volatile Object zero;
+        // Live entries, and slots with a key in the table, removed or not
+        volatile int size;
+        int used;
+
+        @SuppressWarnings("unchecked")
+        V get(long key, long hash) {
+            if (key == 0) {
+                return (V) zero;
+            }
+            Table current = table;
+            long[] keys = current.keys;
+            int mask = keys.length - 1;
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long found = (long) KEYS.getAcquire(keys, slot);
+                if (found == key) {
+                    return (V) VALUES.getAcquire(current.values, slot);
+                }
+                if (found == 0) {
+                    return null;
+                }
+            }
+        }
+
+        // Sets or, for a null value, removes the key; returns the previous value. Called with the lock held.
+        @SuppressWarnings("unchecked")
+        V put(long key, long hash, V value) {
+            if (key == 0) {
+                V previous = (V) zero;
+                zero = value;
+                size += (previous == null ? 0 : -1) + (value == null ? 0 : 1);
+                return previous;
+            }
+            Table current = table;
+            int mask = current.keys.length - 1;
+            int slot = (int) hash & mask;
+            while (current.keys[slot] != key && current.keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            if (current.keys[slot] == key) {
+                V previous = (V) current.values[slot];
+                VALUES.setRelease(current.values, slot, value);
+                size += (previous == null ? 0 : -1) + (value == null ? 0 : 1);
+                return previous;
+            }
+            if (value == null) {
+                return null;
+            }
+            if ((used + 1) * 2 > current.keys.length) {
+                current = rebuild(current);
+                mask = current.keys.length - 1;
+                slot = (int) hash & mask;
+                while (current.keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+            }
+            // The value first, so a reader that finds the key finds its value
+            VALUES.setRelease(current.values, slot, value);
+            KEYS.setRelease(current.keys, slot, key);
+            used++;
+            size++;
+            return null;
+        }
+
+        // Copies the live entries into a table at most a quarter full and publishes it
+        private Table rebuild(Table current) {
+            int live = size - (zero == null ? 0 : 1);
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < (live + 1) * 4) {
+                capacity <<= 1;
+            }
+            Table rebuilt = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < current.keys.length; i++) {
+                long key = current.keys[i];
+                Object value = current.values[i];
+                if (key != 0 && value != null) {
+                    int slot = (int) hash(key) & mask;
+                    while (rebuilt.keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    rebuilt.keys[slot] = key;
+                    rebuilt.values[slot] = value;
+                }
+            }
+            used = live;
+            table = rebuilt;
+            return rebuilt;
+        }
+    }
+
+    // Walks the segments' tables as they are when each is reached
+    private final class Values implements Iterator<V> {
+        private int segment = -1;
+        private Table table;
+        private int slot;
+        private V next;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (next == null) {
+                if (table == null || slot >= table.keys.length) {
+                    if (++segment >= segments.length) {
+                        return false;
+                    }
+                    table = segments[segment].table;
+                    slot = 0;
+                    next = (V) segments[segment].zero;
+                    continue;
+                }
+                if ((long) KEYS.getAcquire(table.keys, slot) != 0) {
+                    next = (V) VALUES.getAcquire(table.values, slot);
+                }
+                slot++;
+            }
+            return true;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            V value = next;
+            next = null;
+            return value;
+        }
+    }
+}
@@ -1,74 +1,434 @@
 package com.bookstore.api.storage;
 
+import com.bookstore.api.exceptions.AuthorNotFoundException;
+import com.bookstore.api.exceptions.InvalidInputException;
+import com.bookstore.api.exceptions.OutOfStockException;
+import com.bookstore.api.exceptions.PreconditionFailedException;
 import com.bookstore.api.models.*;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.Calendar;
 
-// Singleton in-memory data store
+// Singleton in-memory data store, safe for use from concurrent request threads.
+// When bookstore.data.dir is set, every mutation is also appended to a write-ahead log and the
+// store is snapshotted periodically; startup loads the newest snapshot and replays the log tail.
 public class DataStore {
-    private static DataStore instance;
+    private static final Logger LOGGER = Logger.getLogger(DataStore.class.getName());
 
-    private Map<Long, Book> books;
-    private Map<Long, Author> authors;
-    private Map<Long, Customer> customers;
-    private Map<Long, Cart> carts;
-    private Map<Long, List<Order>> orders;
+    // Number of lock stripes guarding per-customer cart and order mutations (power of two)
+    private static final int CUSTOMER_LOCK_STRIPES = 256;
 
-    private long nextBookId;
-    private long nextAuthorId;
-    private long nextCustomerId;
-    private long nextOrderId;
+    // Search score of an author name match relative to a title or ISBN match
+    private static final double AUTHOR_MATCH_WEIGHT = 0.8;
+    // Search score of an exact ISBN match; above any text score, so the book comes first
+    private static final double ISBN_MATCH_SCORE = 1000.0;
+
+    private static final LongPredicate ANY_VERSION = version -> true;
+
+    private final ConcurrentLongMap<Book> books;
+    private final ConcurrentLongMap<Author> authors;
+    private final ConcurrentLongMap<Customer> customers;
+    private final ConcurrentLongMap<Cart> carts;
+    // customerId -> that customer's orders keyed by orderId; ids are assigned in time order
+    private final ConcurrentLongMap<ConcurrentNavigableMap<Long, Order>> orders;
+    private final ConcurrentLongMap<Order> ordersById;
+
+    // Secondary indexes: authorId -> ids of that author's books, ISBN without separators -> ids of its books
+    private final Map<Long, Set<Long>> booksByAuthor;
+    private final Map<String, long[]> booksByIsbn;
+
+    // Ordered id indexes backing keyset pagination
+    private final NavigableSet<Long> bookIds;
+    private final NavigableSet<Long> authorIds;
+    private final NavigableSet<Long> customerIds;
+
+    // Full-text search: book titles by book id, author names by author id
+    private final TextIndex bookText;
+    private final TextIndex authorNames;
+    // Price, year, author and stock filters of GET /books
+    private final BookFilterIndex bookFilters;
+    // Title and author name completions of GET /books/suggest
+    private final SuggestIndex suggestions;
+    // Set while a snapshot loads; read by the loader threads, which start after it is set. Covers booksByIsbn,
+    // bookFilters and suggestions too.
+    private boolean indexesDeferred;
+    // Set while the snapshot loads and the log is replayed, when books may be restored before their authors
+    private boolean recovering;
+    // bookId -> log sequence of the book's last replayed BOOK_PUT, only used while the log is replayed
+    private final Map<Long, Long> replayedBookPuts = new HashMap<>();
+
+    private final AtomicLong nextBookId;
+    private final AtomicLong nextAuthorId;
+    private final AtomicLong nextCustomerId;
+    private final AtomicLong nextOrderId;
+
+    // Version stamps for ETags; every change to an entity gives it the next one. They are not persisted, so the
+    // clock starts with the wall clock in its high bits, ahead of every stamp of an earlier run unless that run
+    // averaged over a million changes per millisecond.
+    private final AtomicLong versions = new AtomicLong(System.currentTimeMillis() << 20);
+    // authorId -> version stamp of the author's book list, which changes with any of those books
+    private final Map<Long, AtomicLong> authorBookVersions;
+
+    private final ReentrantLock[] customerLocks;
+
+    // Checkouts that had to wait for another request holding the customer's lock stripe,
+    // and checkouts refused because a line could not be reserved
+    private final LongAdder checkoutConflicts = new LongAdder();
+    private final LongAdder stockReservationFailures = new LongAdder();
+
+    // Persistence; journal stays null when running memory-only (and while recovering)
+    private WriteAheadLog journal;
+    private SnapshotStore snapshots;
+    private ScheduledExecutorService snapshotScheduler;
+    private long recoveryMillis;
+
+    // Mutations hold the read side while they change state and append their log record;
+    // a snapshot holds the write side, so it always matches an exact log position
+    private final ReentrantReadWriteLock snapshotGate = new ReentrantReadWriteLock();
+
+    // Durability of the last record appended by the current thread's mutation
+    private final ThreadLocal<CompletableFuture<Void>> pendingWrite = new ThreadLocal<>();
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
 
     private DataStore() {
-        books = new HashMap<>();
-        authors = new HashMap<>();
-        customers = new HashMap<>();
-        carts = new HashMap<>();
-        orders = new HashMap<>();
+        this(PersistenceConfig.fromSystemProperties());
+    }
+
+    // Tests open stores of their own, to restart one on the same data directory
+    DataStore(PersistenceConfig persistence) {
+        books = new ConcurrentLongMap<>();
+        authors = new ConcurrentLongMap<>();
+        customers = new ConcurrentLongMap<>();
+        carts = new ConcurrentLongMap<>();
+        orders = new ConcurrentLongMap<>();
+        ordersById = new ConcurrentLongMap<>();
+        booksByAuthor = new ConcurrentHashMap<>();
+        booksByIsbn = new ConcurrentHashMap<>();
+        authorBookVersions = new ConcurrentHashMap<>();
+        bookIds = new ConcurrentSkipListSet<>();
+        authorIds = new ConcurrentSkipListSet<>();
+        customerIds = new ConcurrentSkipListSet<>();
+        bookText = new TextIndex();
+        authorNames = new TextIndex();
+        bookFilters = new BookFilterIndex();
+        suggestions = new SuggestIndex();
+
+        nextBookId = new AtomicLong(1);
+        nextAuthorId = new AtomicLong(1);
+        nextCustomerId = new AtomicLong(1);
+        nextOrderId = new AtomicLong(1);
+
+        customerLocks = new ReentrantLock[CUSTOMER_LOCK_STRIPES];
+        for (int i = 0; i < customerLocks.length; i++) {
+            customerLocks[i] = new ReentrantLock();
+        }
+
+        if (persistence.isEnabled()) {
+            openPersistentState(persistence);
+        } else {
+            // Add some sample data
+            initSampleData();
+        }
+    }
 
-        nextBookId = 1;
-        nextAuthorId = 1;
-        nextCustomerId = 1;
-        nextOrderId = 1;
+    // Lazily initialized on first use; resources look the store up on every request, so avoid a lock here
+    private static class Holder {
+        private static final DataStore INSTANCE = new DataStore();
+    }
 
-        // Add some sample data
-        initSampleData();
+    public static DataStore getInstance() {
+        return Holder.INSTANCE;
     }
 
-    public static synchronized DataStore getInstance() {
-        if (instance == null) {
-            instance = new DataStore();
+    // Returns the lock stripe that serializes cart and order mutations of a customer
+    private ReentrantLock customerLock(long customerId) {
+        long h = customerId * 0x9E3779B97F4A7C15L;
+        return customerLocks[(int) (h >>> 32) & (CUSTOMER_LOCK_STRIPES - 1)];
+    }
+
+    private void openPersistentState(PersistenceConfig config) {
+        long started = System.nanoTime();
+        try {
+            snapshots = new SnapshotStore(config.getDataDirectory());
+            // Loader threads skip the search, ISBN, filter and suggestion indexes; they are built in one pass
+            // before the log is replayed
+            recovering = true;
+            indexesDeferred = true;
+            long snapshotSequence = snapshots.load(this);
+            indexesDeferred = false;
+            rebuildIndexes();
+            WriteAheadLog.Recovery recovery = WriteAheadLog.replay(config.getDataDirectory(),
+                    Math.max(snapshotSequence, 0), (record, sequence) -> Mutations.apply(this, record, sequence));
+            recovering = false;
+            replayedBookPuts.clear();
+
+            if (snapshotSequence < 0 && recovery.replayed == 0) {
+                // First start on an empty directory: keep the sample data as the initial snapshot
+                initSampleData();
+                snapshots.write(captureSnapshot());
+            }
+            journal = new WriteAheadLog(config, recovery.lastSequence, recovery.nextSegmentIndex);
+            recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            LOGGER.info(String.format("Restored %d books, %d authors, %d customers from %s in %d ms (%d log records replayed)",
+                    books.size(), authors.size(), customers.size(), config.getDataDirectory(), recoveryMillis,
+                    recovery.replayed));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load data from " + config.getDataDirectory(), e);
         }
-        return instance;
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "datastore-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = config.getSnapshotIntervalSeconds();
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Snapshot failed", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    // Writes a snapshot and drops the log segments it covers. Mutations pause only while state is copied.
+    public void snapshot() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        SnapshotStore.Snapshot snapshot;
+        CompletableFuture<Long> newSegment;
+        snapshotGate.writeLock().lock();
+        try {
+            snapshot = captureSnapshot();
+            newSegment = journal.rollover();
+        } finally {
+            snapshotGate.writeLock().unlock();
+        }
+        snapshots.write(snapshot);
+        journal.deleteSegmentsBefore(newSegment.join());
+    }
+
+    // Time spent loading the snapshot and replaying the log at startup, 0 without persistence
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    // Takes a final snapshot and closes the log; the store must not be mutated afterwards
+    public void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        // A scheduled snapshot already running would race the final one on the temporary directory and on
+        // deleting segments, so let it finish first; shutdown() cancels the ones not yet started
+        snapshotScheduler.shutdown();
+        try {
+            while (!snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.info("Waiting for a running snapshot to finish before closing");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a running snapshot");
+        }
+        snapshot();
+        // Closing under the gate lets in-flight mutations finish logging; later ones are turned away in beginMutation
+        snapshotGate.writeLock().lock();
+        try {
+            journal.close();
+        } finally {
+            snapshotGate.writeLock().unlock();
+        }
+    }
+
+    // Copies references to every entity. Only stock and cart lines change in place, so those are copied by value.
+    private SnapshotStore.Snapshot captureSnapshot() {
+        SnapshotStore.Snapshot snapshot = new SnapshotStore.Snapshot();
+        snapshot.sequence = (journal == null) ? 0 : journal.lastSequence();
+        snapshot.nextBookId = nextBookId.get();
+        snapshot.nextAuthorId = nextAuthorId.get();
+        snapshot.nextCustomerId = nextCustomerId.get();
+        snapshot.nextOrderId = nextOrderId.get();
+        snapshot.authors.addAll(authors.values());
+        snapshot.books.addAll(books.values());
+        snapshot.stocks = new int[snapshot.books.size()];
+        for (int i = 0; i < snapshot.stocks.length; i++) {
+            snapshot.stocks[i] = snapshot.books.get(i).getStock();
+        }
+        snapshot.customers.addAll(customers.values());
+        for (Cart cart : carts.values()) {
+            snapshot.cartOwners.add(cart.getCustomerId());
+            snapshot.cartItems.add(cart.getItems());
+        }
+        for (Map<Long, Order> customerOrders : orders.values()) {
+            snapshot.orders.addAll(customerOrders.values());
+        }
+        return snapshot;
+    }
+
+    // Rejects the mutation before any map or index is touched once the log no longer accepts records
+    private void beginMutation() {
+        if (journal != null) {
+            snapshotGate.readLock().lock();
+            if (journal.isClosed()) {
+                snapshotGate.readLock().unlock();
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+        }
+    }
+
+    // Under the per-write fsync policy, waits for the mutation's log record only after all locks are released
+    private void endMutation() {
+        CompletableFuture<Void> written = finishMutation();
+        if (isDurableOnReturn()) {
+            written.join();
+        }
+    }
+
+    // Leaves the mutation without waiting; the future completes once its log record is durable
+    private CompletableFuture<Void> finishMutation() {
+        if (journal == null) {
+            return DURABLE;
+        }
+        snapshotGate.readLock().unlock();
+        CompletableFuture<Void> written = pendingWrite.get();
+        if (written == null) {
+            return DURABLE;
+        }
+        pendingWrite.remove();
+        return written;
+    }
+
+    // Appends a record; called inside the critical section that orders the mutation it describes
+    private void log(byte[] record) {
+        if (journal != null) {
+            pendingWrite.set(journal.append(record));
+        }
+    }
+
+    // Recovery: entities are restored with their original ids. Snapshot loading calls these from several
+    // threads at once and sets the id sequences from the snapshot; log replay moves them past replayed ids.
+
+    void restoreSequences(long bookId, long authorId, long customerId, long orderId) {
+        advance(nextBookId, bookId);
+        advance(nextAuthorId, authorId);
+        advance(nextCustomerId, customerId);
+        advance(nextOrderId, orderId);
+    }
+
+    void restoreBook(Book book) {
+        putBook(book);
+    }
+
+    void restoreAuthor(Author author) {
+        putAuthor(author);
+    }
+
+    void restoreCustomer(Customer customer) {
+        putCustomer(customer);
+    }
+
+    void restoreCart(Cart cart) {
+        stamp(cart);
+        carts.put(cart.getCustomerId(), cart);
+    }
+
+    // A replayed BOOK_PUT notes its log sequence, so replayOrder() can tell which reservations it overwrote
+    void replayBook(Book book, long sequence) {
+        restoreBook(book);
+        replayedBookPuts.put(book.getId(), sequence);
+    }
+
+    // Replayed checkouts also take their stock and clear the cart. Checkouts reserve stock before they log the
+    // order, so a BOOK_PUT of the same book may sit between the two in the log although it replaced the reserved
+    // stock live; an item is only taken from stock if its book was last put at or before the item's reservation.
+    void replayOrder(Order order, long[] reservedAt) {
+        List<OrderItem> items = order.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            Book book = getBook(item.getBookId());
+            if (book != null && replayedBookPuts.getOrDefault(book.getId(), Long.MIN_VALUE) <= reservedAt[i]) {
+                book.setStock(book.getStock() - item.getQuantity());
+                changedInPlace(book);
+                if (book.getStock() <= 0) {
+                    stockChanged(book);
+                }
+            }
+        }
+        Cart cart = getCart(order.getCustomerId());
+        if (cart != null) {
+            cart.clear();
+            stamp(cart);
+        }
+        restoreOrder(order);
+    }
+
+    // Snapshot orders already had their stock taken and their cart cleared
+    void restoreOrder(Order order) {
+        order.setVersion(versions.incrementAndGet());
+        orders.computeIfAbsent(order.getCustomerId(), id -> new ConcurrentSkipListMap<>()).put(order.getId(), order);
+        ordersById.put(order.getId(), order);
+        if (!indexesDeferred) {
+            suggestions.recordOrder(order);
+        }
+    }
+
+    private static void advance(AtomicLong sequence, long next) {
+        sequence.accumulateAndGet(next, Math::max);
     }
 
     private void initSampleData() {
         // Create sample authors
-        Author author1 = new Author(nextAuthorId++, "J.K. Rowling", "British author best known for the Harry Potter series.");
-        Author author2 = new Author(nextAuthorId++, "George R.R. Martin", "American novelist and screenwriter, author of A Song of Ice and Fire.");
+        Author author1 = new Author(nextAuthorId.getAndIncrement(), "J.K. Rowling", "British author best known for the Harry Potter series.");
+        Author author2 = new Author(nextAuthorId.getAndIncrement(), "George R.R. Martin", "American novelist and screenwriter, author of A Song of Ice and Fire.");
 
-        authors.put(author1.getId(), author1);
-        authors.put(author2.getId(), author2);
+        putAuthor(author1);
+        putAuthor(author2);
 
         // Create sample books
-        Book book1 = new Book(nextBookId++, "Harry Potter and the Philosopher's Stone", author1.getId(), "978-0-7475-3269-9", 1997, 15.99, 100);
-        Book book2 = new Book(nextBookId++, "Harry Potter and the Chamber of Secrets", author1.getId(), "978-0-7475-3849-3", 1998, 16.99, 80);
-        Book book3 = new Book(nextBookId++, "A Game of Thrones", author2.getId(), "978-0-553-10354-0", 1996, 20.99, 50);
+        Book book1 = new Book(nextBookId.getAndIncrement(), "Harry Potter and the Philosopher's Stone", author1.getId(), "978-0-7475-3269-9", 1997, 15.99, 100);
+        Book book2 = new Book(nextBookId.getAndIncrement(), "Harry Potter and the Chamber of Secrets", author1.getId(), "978-0-7475-3849-3", 1998, 16.99, 80);
+        Book book3 = new Book(nextBookId.getAndIncrement(), "A Game of Thrones", author2.getId(), "978-0-553-10354-0", 1996, 20.99, 50);
 
-        books.put(book1.getId(), book1);
-        books.put(book2.getId(), book2);
-        books.put(book3.getId(), book3);
+        putBook(book1);
+        putBook(book2);
+        putBook(book3);
 
         // Create sample customers
-        Customer customer1 = new Customer(nextCustomerId++, "John Doe", "john.doe@example.com", "password123");
-        Customer customer2 = new Customer(nextCustomerId++, "Jane Smith", "jane.smith@example.com", "password456");
+        Customer customer1 = new Customer(nextCustomerId.getAndIncrement(), "John Doe", "john.doe@example.com", "password123");
+        Customer customer2 = new Customer(nextCustomerId.getAndIncrement(), "Jane Smith", "jane.smith@example.com", "password456");
 
-        customers.put(customer1.getId(), customer1);
-        customers.put(customer2.getId(), customer2);
+        putCustomer(customer1);
+        putCustomer(customer2);
 
         // Create sample carts
         Cart cart1 = new Cart(customer1.getId());
@@ -79,9 +439,94 @@ public class DataStore {
 
     // Book operations
     public Book createBook(Book book) {
-        book.setId(nextBookId++);
-        books.put(book.getId(), book);
-        return book;
+        beginMutation();
+        try {
+            book.setId(nextBookId.getAndIncrement());
+            putBook(book);
+            return book;
+        } finally {
+            endMutation();
+        }
+    }
+
+    // Book writes run inside compute() so the author index changes atomically with the book itself. The author
+    // is indexed first: it fails if the author is gone, and must fail before anything else has changed.
+    private void putBook(Book book) {
+        List<String> tokens = indexesDeferred ? null : searchTokens(book);
+        Book[] replaced = new Book[1];
+        long id = book.getId();
+        books.compute(id, (key, previous) -> {
+            if (previous == null || previous.getAuthorId() != book.getAuthorId()) {
+                indexAuthor(book);
+                if (previous != null) {
+                    unindexAuthor(previous);
+                }
+            }
+            if (previous != null) {
+                unindexIsbn(previous);
+            }
+            replaced[0] = previous;
+            book.setVersion(versions.incrementAndGet());
+            if (!indexesDeferred) {
+                indexIsbn(book);
+            }
+            if (tokens != null) {
+                bookText.update(id, previous == null ? null : searchTokens(previous), tokens);
+                bookFilters.update(previous, book);
+                suggestions.putBook(book);
+            }
+            bookIds.add(id);
+            log(Mutations.bookPut(book));
+            return book;
+        });
+        booksChanged(replaced[0], book);
+    }
+
+    // Checks the author under its index entry, which deleteAuthor() holds while it removes an author without
+    // books, so a book can never be added to an author that is being deleted. Recovery restores books before
+    // their authors and skips the check.
+    private void indexAuthor(Book book) {
+        booksByAuthor.compute(book.getAuthorId(), (authorId, ids) -> {
+            if (!recovering && !authors.containsKey(authorId)) {
+                throw new AuthorNotFoundException(authorId);
+            }
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(book.getId());
+            return ids;
+        });
+    }
+
+    private void indexIsbn(Book book) {
+        booksByIsbn.compute(isbnKey(book.getIsbn()), (isbn, ids) -> {
+            if (ids == null) {
+                return new long[] {book.getId()};
+            }
+            long[] grown = Arrays.copyOf(ids, ids.length + 1);
+            grown[ids.length] = book.getId();
+            return grown;
+        });
+    }
+
+    private void unindexAuthor(Book book) {
+        booksByAuthor.computeIfPresent(book.getAuthorId(), (authorId, ids) -> {
+            ids.remove(book.getId());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private void unindexIsbn(Book book) {
+        booksByIsbn.computeIfPresent(isbnKey(book.getIsbn()), (isbn, ids) -> {
+            long[] remaining = new long[ids.length];
+            int count = 0;
+            for (long id : ids) {
+                if (id != book.getId()) {
+                    remaining[count++] = id;
+                }
+            }
+            return count == 0 ? null : Arrays.copyOf(remaining, count);
+        });
     }
 
     public Book getBook(long id) {
@@ -92,23 +537,271 @@ public class DataStore {
         return new ArrayList<>(books.values());
     }
 
+    // Live, read-only view of all books for streaming; reflects concurrent changes without copying
+    public Collection<Book> iterateBooks() {
+        return Collections.unmodifiableCollection(books.values());
+    }
+
+    // Returns up to limit books with an id greater than afterId, in id order
+    public List<Book> getBooks(long afterId, int limit) {
+        return page(bookIds, books::get, afterId, limit);
+    }
+
+    // Same, for the books matching the filter; answered from the filter index instead of a scan
+    public List<Book> getBooks(BookFilter filter, long afterId, int limit) {
+        if (filter.isEmpty()) {
+            return getBooks(afterId, limit);
+        }
+        long[] ids = bookFilters.find(filter, afterId, limit);
+        List<Book> page = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            Book book = books.get(id);
+            if (book != null) {
+                page.add(book);
+            }
+        }
+        return page;
+    }
+
+    public BookFacets getBookFacets(BookFilter filter) {
+        return bookFilters.facets(filter);
+    }
+
     public Book updateBook(long id, Book book) {
-        if (books.containsKey(id)) {
-            book.setId(id);
-            books.put(id, book);
+        return updateBook(id, book, ANY_VERSION);
+    }
+
+    // Replaces the book only if its current version passes ifVersion, checked atomically with the replacement;
+    // throws PreconditionFailedException otherwise
+    public Book updateBook(long id, Book book, LongPredicate ifVersion) {
+        beginMutation();
+        try {
+            return replaceBook(id, book, ifVersion);
+        } finally {
+            endMutation();
+        }
+    }
+
+    // Bulk import of one batch: books with id 0 are created under ids taken for the whole batch at once, the
+    // others replace the existing book with that id. The result holds each stored book, or null where the book
+    // to replace or its author no longer exists. The batch is one mutation, so the per-write policy waits for the
+    // disk once.
+    public List<Book> putBooks(List<Book> batch) {
+        beginMutation();
+        try {
+            int created = 0;
+            for (Book book : batch) {
+                if (book.getId() == 0) {
+                    created++;
+                }
+            }
+            long nextId = nextBookId.getAndAdd(created);
+            List<Book> stored = new ArrayList<>(batch.size());
+            for (Book book : batch) {
+                try {
+                    if (book.getId() == 0) {
+                        book.setId(nextId++);
+                        putBook(book);
+                        stored.add(book);
+                    } else {
+                        stored.add(replaceBook(book.getId(), book, ANY_VERSION));
+                    }
+                } catch (AuthorNotFoundException e) {
+                    stored.add(null);
+                }
+            }
+            return stored;
+        } finally {
+            endMutation();
+        }
+    }
+
+    private Book replaceBook(long id, Book book, LongPredicate ifVersion) {
+        book.setId(id);
+        List<String> tokens = searchTokens(book);
+        Book[] replaced = new Book[1];
+        Book updated = books.computeIfPresent(id, (key, previous) -> {
+            if (!ifVersion.test(previous.getVersion())) {
+                throw new PreconditionFailedException("Book with ID " + id + " has changed since it was read.");
+            }
+            if (previous.getAuthorId() != book.getAuthorId()) {
+                indexAuthor(book);
+                unindexAuthor(previous);
+            }
+            if (!isbnKey(previous.getIsbn()).equals(isbnKey(book.getIsbn()))) {
+                unindexIsbn(previous);
+                indexIsbn(book);
+            }
+            replaced[0] = previous;
+            book.setVersion(versions.incrementAndGet());
+            bookText.update(id, searchTokens(previous), tokens);
+            bookFilters.update(previous, book);
+            suggestions.putBook(book);
+            log(Mutations.bookPut(book));
             return book;
+        });
+        if (updated != book) {
+            return null;
         }
-        return null;
+        booksChanged(replaced[0], book);
+        return book;
     }
 
     public boolean deleteBook(long id) {
-        return (books.remove(id) != null);
+        beginMutation();
+        try {
+            Book[] deleted = new Book[1];
+            books.computeIfPresent(id, (key, previous) -> {
+                unindexAuthor(previous);
+                unindexIsbn(previous);
+                bookText.update(id, searchTokens(previous), null);
+                bookFilters.update(previous, null);
+                suggestions.removeBook(id);
+                bookIds.remove(id);
+                log(Mutations.bookDelete(id));
+                deleted[0] = previous;
+                return null;
+            });
+            if (deleted[0] == null) {
+                return false;
+            }
+            booksChanged(deleted[0], null);
+            return true;
+        } finally {
+            endMutation();
+        }
+    }
+
+    // Stamps the book lists of the authors of a book before and after a change; either may be null. Called once
+    // the change is visible to getBooksByAuthor, so a list read under the new stamp includes it.
+    private void booksChanged(Book previous, Book book) {
+        if (previous != null && (book == null || previous.getAuthorId() != book.getAuthorId())) {
+            authorBooksChanged(previous.getAuthorId());
+        }
+        if (book != null) {
+            authorBooksChanged(book.getAuthorId());
+        }
+    }
+
+    private void authorBooksChanged(long authorId) {
+        authorBookVersions.computeIfAbsent(authorId, id -> new AtomicLong()).set(versions.incrementAndGet());
+    }
+
+    // After a change to a stored book object itself, such as to its stock
+    private void changedInPlace(Book book) {
+        book.advanceVersion(versions::incrementAndGet);
+        authorBooksChanged(book.getAuthorId());
+    }
+
+    // Version stamp of the list returned by getBooksByAuthor; 0 until one of the author's books changes
+    public long getAuthorBooksVersion(long authorId) {
+        AtomicLong version = authorBookVersions.get(authorId);
+        return version == null ? 0 : version.get();
+    }
+
+    // Full-text search over title and author name, best match first; the last query word also matches as a
+    // prefix. An author name match counts for every book of the author. A query that is an ISBN, with or without
+    // separators, puts the books with that ISBN first.
+    public List<Book> searchBooks(String query, int limit) {
+        List<String> tokens = TextIndex.tokenize(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Double> scores = new HashMap<>();
+        long[] isbnMatches = booksByIsbn.get(String.join("", tokens));
+        if (isbnMatches != null) {
+            for (long id : isbnMatches) {
+                scores.put(id, ISBN_MATCH_SCORE);
+            }
+        }
+        bookText.score(tokens, 1.0, (bookId, score) -> scores.merge(bookId, score, Double::sum));
+        Map<Long, Double> authorScores = new HashMap<>();
+        authorNames.score(tokens, AUTHOR_MATCH_WEIGHT,
+                (authorId, score) -> authorScores.merge(authorId, score, Double::sum));
+        for (Map.Entry<Long, Double> author : authorScores.entrySet()) {
+            Set<Long> ids = booksByAuthor.get(author.getKey());
+            if (ids != null) {
+                for (Long id : ids) {
+                    scores.merge(id, author.getValue(), Double::sum);
+                }
+            }
+        }
+
+        // Keep the best matches in a min-heap of at most limit entries; ties go to the older book
+        Comparator<Map.Entry<Long, Double>> worstFirst = Map.Entry.<Long, Double>comparingByValue()
+                .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(worstFirst);
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Book> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Book book = books.get(best.poll().getKey());
+            if (book != null) {
+                results.add(book);
+            }
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private void rebuildIndexes() {
+        booksByIsbn.clear();
+        bookIds.forEach(id -> {
+            Book book = books.get(id);
+            if (book != null) {
+                indexIsbn(book);
+            }
+        });
+        bookText.rebuild(() -> bookIds.stream().map(books::get).filter(Objects::nonNull).iterator(),
+                Book::getId, DataStore::searchTokens);
+        authorNames.rebuild(() -> authorIds.stream().map(authors::get).filter(Objects::nonNull).iterator(),
+                Author::getId, author -> TextIndex.tokenize(author.getName()));
+        bookFilters.rebuild(() -> bookIds.stream().map(books::get).filter(Objects::nonNull).iterator(), books.size());
+        suggestions.rebuild(books.values(), authors.values(), ordersById.values());
+    }
+
+    private static List<String> searchTokens(Book book) {
+        return TextIndex.tokenize(book.getTitle());
+    }
+
+    // ISBN without separators or case, so "978-0-553-10354-0" and "9780553103540" are the same key
+    private static String isbnKey(String isbn) {
+        if (isbn == null) {
+            return "";
+        }
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (!Character.isLetterOrDigit(c) || Character.isUpperCase(c)) {
+                return String.join("", TextIndex.tokenize(isbn));
+            }
+        }
+        // Already compact: share the book's own string
+        return isbn;
+    }
+
+    // Typeahead: the most ordered titles and author names starting with prefix
+    public List<Suggestion> suggest(String prefix, int limit) {
+        return suggestions.suggest(prefix, limit);
     }
 
     public List<Book> getBooksByAuthor(long authorId) {
-        return books.values().stream()
-                .filter(book -> book.getAuthorId() == authorId)
-                .collect(Collectors.toList());
+        Set<Long> ids = booksByAuthor.get(authorId);
+        if (ids == null) {
+            return new ArrayList<>();
+        }
+        List<Book> authorBooks = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Book book = books.get(id);
+            if (book != null) {
+                authorBooks.add(book);
+            }
+        }
+        return authorBooks;
     }
 
     public boolean authorExists(long authorId) {
@@ -133,9 +826,28 @@ public class DataStore {
 
     // Author operations
     public Author createAuthor(Author author) {
-        author.setId(nextAuthorId++);
-        authors.put(author.getId(), author);
-        return author;
+        beginMutation();
+        try {
+            author.setId(nextAuthorId.getAndIncrement());
+            putAuthor(author);
+            return author;
+        } finally {
+            endMutation();
+        }
+    }
+
+    private void putAuthor(Author author) {
+        List<String> tokens = indexesDeferred ? null : TextIndex.tokenize(author.getName());
+        authors.compute(author.getId(), (id, previous) -> {
+            author.setVersion(versions.incrementAndGet());
+            if (tokens != null) {
+                authorNames.update(id, previous == null ? null : TextIndex.tokenize(previous.getName()), tokens);
+                suggestions.putAuthor(author);
+            }
+            authorIds.add(id);
+            log(Mutations.authorPut(author));
+            return author;
+        });
     }
 
     public Author getAuthor(long id) {
@@ -146,32 +858,80 @@ public class DataStore {
         return new ArrayList<>(authors.values());
     }
 
+    // Live, read-only view of all authors for streaming; reflects concurrent changes without copying
+    public Collection<Author> iterateAuthors() {
+        return Collections.unmodifiableCollection(authors.values());
+    }
+
+    // Returns up to limit authors with an id greater than afterId, in id order
+    public List<Author> getAuthors(long afterId, int limit) {
+        return page(authorIds, authors::get, afterId, limit);
+    }
+
     public Author updateAuthor(long id, Author author) {
-        if (authors.containsKey(id)) {
+        beginMutation();
+        try {
             author.setId(id);
-            authors.put(id, author);
-            return author;
+            List<String> tokens = TextIndex.tokenize(author.getName());
+            Author updated = authors.computeIfPresent(id, (key, previous) -> {
+                author.setVersion(versions.incrementAndGet());
+                authorNames.update(id, TextIndex.tokenize(previous.getName()), tokens);
+                suggestions.putAuthor(author);
+                log(Mutations.authorPut(author));
+                return author;
+            });
+            return (updated == author) ? author : null;
+        } finally {
+            endMutation();
         }
-        return null;
     }
 
     public boolean deleteAuthor(long id) {
-        // Check if author has books
-        boolean hasBooks = books.values().stream()
-                .anyMatch(book -> book.getAuthorId() == id);
-
-        if (hasBooks) {
-            return false;
+        beginMutation();
+        try {
+            // Check for books and remove the author under the author's index entry; indexAuthor() checks the author
+            // under the same entry, so no book can be added in between
+            boolean[] deleted = new boolean[1];
+            booksByAuthor.compute(id, (authorId, ids) -> {
+                if (ids == null || ids.isEmpty()) {
+                    authors.computeIfPresent(id, (key, previous) -> {
+                        authorNames.update(id, TextIndex.tokenize(previous.getName()), null);
+                        suggestions.removeAuthor(id);
+                        authorIds.remove(id);
+                        authorBookVersions.remove(id);
+                        log(Mutations.authorDelete(id));
+                        deleted[0] = true;
+                        return null;
+                    });
+                    return null;
+                }
+                return ids;
+            });
+            return deleted[0];
+        } finally {
+            endMutation();
         }
-
-        return (authors.remove(id) != null);
     }
 
     // Customer operations
     public Customer createCustomer(Customer customer) {
-        customer.setId(nextCustomerId++);
-        customers.put(customer.getId(), customer);
-        return customer;
+        beginMutation();
+        try {
+            customer.setId(nextCustomerId.getAndIncrement());
+            putCustomer(customer);
+            return customer;
+        } finally {
+            endMutation();
+        }
+    }
+
+    private void putCustomer(Customer customer) {
+        customers.compute(customer.getId(), (id, previous) -> {
+            customer.setVersion(versions.incrementAndGet());
+            customerIds.add(id);
+            log(Mutations.customerPut(customer));
+            return customer;
+        });
     }
 
     public Customer getCustomer(long id) {
@@ -182,76 +942,272 @@ public class DataStore {
         return new ArrayList<>(customers.values());
     }
 
+    // Live, read-only view of all customers for streaming; reflects concurrent changes without copying
+    public Collection<Customer> iterateCustomers() {
+        return Collections.unmodifiableCollection(customers.values());
+    }
+
+    // Returns up to limit customers with an id greater than afterId, in id order
+    public List<Customer> getCustomers(long afterId, int limit) {
+        return page(customerIds, customers::get, afterId, limit);
+    }
+
     public Customer updateCustomer(long id, Customer customer) {
-        if (customers.containsKey(id)) {
+        beginMutation();
+        try {
             customer.setId(id);
-            customers.put(id, customer);
-            return customer;
+            Customer updated = customers.computeIfPresent(id, (key, previous) -> {
+                customer.setVersion(versions.incrementAndGet());
+                log(Mutations.customerPut(customer));
+                return customer;
+            });
+            return (updated == customer) ? customer : null;
+        } finally {
+            endMutation();
         }
-        return null;
     }
 
     public boolean deleteCustomer(long id) {
-        if (customers.containsKey(id)) {
-            customers.remove(id);
+        beginMutation();
+        ReentrantLock lock = customerLock(id);
+        lock.lock();
+        try {
+            if (customers.remove(id) == null) {
+                return false;
+            }
+            customerIds.remove(id);
             carts.remove(id);
-            orders.remove(id);
+            ConcurrentNavigableMap<Long, Order> customerOrders = orders.remove(id);
+            if (customerOrders != null) {
+                for (long orderId : customerOrders.keySet()) {
+                    ordersById.remove(orderId);
+                }
+            }
+            log(Mutations.customerDelete(id));
             return true;
+        } finally {
+            lock.unlock();
+            endMutation();
         }
-        return false;
     }
 
     public boolean customerExists(long customerId) {
         return customers.containsKey(customerId);
     }
 
+    // Keyset pagination over an ordered id index; ids removed concurrently are skipped
+    private static <T> List<T> page(NavigableSet<Long> ids, LongFunction<T> entities, long afterId, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit, 1024));
+        for (long id : ids.tailSet(afterId, false)) {
+            if (page.size() >= limit) {
+                break;
+            }
+            T entity = entities.apply(id);
+            if (entity != null) {
+                page.add(entity);
+            }
+        }
+        return page;
+    }
+
     // Cart operations
     public Cart getCart(long customerId) {
         return carts.get(customerId);
     }
 
     public Cart createCart(long customerId) {
-        Cart cart = new Cart(customerId);
-        carts.put(customerId, cart);
-        return cart;
+        // Never replace a cart another request created concurrently
+        return getOrCreateCart(customerId);
     }
 
     public Cart getOrCreateCart(long customerId) {
-        Cart cart = getCart(customerId);
-        if (cart == null) {
-            cart = createCart(customerId);
-        }
-        return cart;
+        return carts.computeIfAbsent(customerId, id -> {
+            Cart cart = new Cart(id);
+            stamp(cart);
+            return cart;
+        });
+    }
+
+    // Cart lines change in place, under the customer's lock except during recovery, so the version follows
+    private void stamp(Cart cart) {
+        cart.setVersion(versions.incrementAndGet());
     }
 
     public void addToCart(long customerId, CartItem item) {
-        Cart cart = getOrCreateCart(customerId);
-        cart.addItem(item);
+        beginMutation();
+        ReentrantLock lock = customerLock(customerId);
+        lock.lock();
+        try {
+            Cart cart = getOrCreateCart(customerId);
+            cart.addItem(item);
+            stamp(cart);
+            log(Mutations.cartAdd(customerId, item.getBookId(), item.getQuantity()));
+        } finally {
+            lock.unlock();
+            endMutation();
+        }
     }
 
     public void updateCartItem(long customerId, long bookId, int quantity) {
-        Cart cart = getCart(customerId);
-        if (cart != null) {
-            cart.updateItem(bookId, quantity);
+        beginMutation();
+        ReentrantLock lock = customerLock(customerId);
+        lock.lock();
+        try {
+            Cart cart = getCart(customerId);
+            if (cart != null) {
+                cart.updateItem(bookId, quantity);
+                stamp(cart);
+                log(Mutations.cartUpdate(customerId, bookId, quantity));
+            }
+        } finally {
+            lock.unlock();
+            endMutation();
         }
     }
 
     public void removeFromCart(long customerId, long bookId) {
-        Cart cart = getCart(customerId);
-        if (cart != null) {
-            cart.removeItem(bookId);
+        beginMutation();
+        ReentrantLock lock = customerLock(customerId);
+        lock.lock();
+        try {
+            Cart cart = getCart(customerId);
+            if (cart != null) {
+                cart.removeItem(bookId);
+                stamp(cart);
+                log(Mutations.cartRemove(customerId, bookId));
+            }
+        } finally {
+            lock.unlock();
+            endMutation();
+        }
+    }
+
+    // Applies a batch of line changes atomically under the customer's lock. Every operation is first checked
+    // against the cart as the earlier ones in the batch leave it, so a failure changes nothing; the batch is
+    // logged as one record so replay also applies all of it or none.
+    public Cart applyCartOperations(long customerId, List<CartOperation> operations) {
+        beginMutation();
+        ReentrantLock lock = customerLock(customerId);
+        lock.lock();
+        try {
+            Cart cart = getCart(customerId);
+            Map<Long, Boolean> inCart = new HashMap<>();
+            for (int i = 0; i < operations.size(); i++) {
+                CartOperation operation = operations.get(i);
+                long bookId = operation.getBookId();
+                if (operation.getOp() == CartOperation.Op.ADD) {
+                    inCart.put(bookId, true);
+                    continue;
+                }
+                Boolean present = inCart.get(bookId);
+                if (present == null ? cart == null || !cart.containsItem(bookId) : !present) {
+                    throw new InvalidInputException("Operation " + i + ": book " + bookId + " is not in the cart.");
+                }
+                if (operation.getOp() == CartOperation.Op.REMOVE) {
+                    inCart.put(bookId, false);
+                }
+            }
+
+            if (cart == null) {
+                cart = getOrCreateCart(customerId);
+            }
+            for (CartOperation operation : operations) {
+                switch (operation.getOp()) {
+                    case ADD:
+                        cart.addItem(new CartItem(operation.getBookId(), operation.getQuantity()));
+                        break;
+                    case UPDATE:
+                        cart.updateItem(operation.getBookId(), operation.getQuantity());
+                        break;
+                    default:
+                        cart.removeItem(operation.getBookId());
+                        break;
+                }
+            }
+            stamp(cart);
+            log(Mutations.cartBatch(customerId, operations));
+            return cart;
+        } finally {
+            lock.unlock();
+            endMutation();
         }
     }
 
     public void clearCart(long customerId) {
-        Cart cart = getCart(customerId);
-        if (cart != null) {
-            cart.clear();
+        beginMutation();
+        ReentrantLock lock = customerLock(customerId);
+        lock.lock();
+        try {
+            Cart cart = getCart(customerId);
+            if (cart != null) {
+                cart.clear();
+                stamp(cart);
+                log(Mutations.cartClear(customerId));
+            }
+        } finally {
+            lock.unlock();
+            endMutation();
         }
     }
 
     // Order operations
     public Order createOrder(long customerId) {
+        beginMutation();
+        lockForCheckout(customerId);
+        try {
+            return createOrderLocked(customerId, nextOrderId::getAndIncrement);
+        } finally {
+            customerLock(customerId).unlock();
+            endMutation();
+        }
+    }
+
+    // Applies a batch of checkouts for the CheckoutPipeline's stage thread. The endpoints only check out through
+    // the pipeline, but createOrder() may run alongside it; reservations of the same book are serialized by the
+    // book's map entry, so they never oversell. Order ids for the whole batch are taken from
+    // nextOrderId at once; ids left over by failed or empty checkouts are skipped. For each index, orders[i]
+    // gets the order (null if the customer or the cart is gone) or failures[i] the checkout failure, Errors
+    // included, so one bad checkout cannot take down the stage thread.
+    // Nothing waits for persistence: the returned future completes once every order of the batch is durable.
+    public CompletableFuture<Void> createOrders(long[] customerIds, int count, Order[] orders, Throwable[] failures) {
+        long[] nextId = {nextOrderId.getAndAdd(count)};
+        LongSupplier orderIds = () -> nextId[0]++;
+        CompletableFuture<Void> written;
+        beginMutation();
+        try {
+            for (int i = 0; i < count; i++) {
+                long customerId = customerIds[i];
+                lockForCheckout(customerId);
+                try {
+                    orders[i] = createOrderLocked(customerId, orderIds);
+                    failures[i] = null;
+                } catch (Throwable e) {
+                    orders[i] = null;
+                    failures[i] = e;
+                } finally {
+                    customerLock(customerId).unlock();
+                }
+            }
+        } finally {
+            written = finishMutation();
+        }
+        return written;
+    }
+
+    // Whether a mutation returns only after its log record is on disk (PER_WRITE fsync policy)
+    public boolean isDurableOnReturn() {
+        return journal != null && journal.getPolicy() == FsyncPolicy.PER_WRITE;
+    }
+
+    private void lockForCheckout(long customerId) {
+        ReentrantLock lock = customerLock(customerId);
+        if (!lock.tryLock()) {
+            checkoutConflicts.increment();
+            lock.lock();
+        }
+    }
+
+    private Order createOrderLocked(long customerId, LongSupplier orderIds) {
         // Ensure customer exists
         if (!customerExists(customerId)) {
             return null;
@@ -259,34 +1215,56 @@ public class DataStore {
 
         // Get customer's cart
         Cart cart = getCart(customerId);
-        if (cart == null || cart.getItems().isEmpty()) {
+        if (cart == null || cart.isEmpty()) {
             return null;
         }
 
-        // Create new order
-        Order order = new Order(nextOrderId++, customerId);
+        // Reserve stock for every line first, so a failure leaves no stock taken. Each reservation runs under the
+        // book's entry, like a BOOK_PUT and its log record, and notes the log sequence reached at that point: a
+        // replace logged at or before it came first, one logged after it replaced the reserved stock.
+        List<CartItem> cartItems = cart.getItems();
+        Book[] reserved = new Book[cartItems.size()];
+        long[] reservedAt = new long[cartItems.size()];
+        for (int i = 0; i < cartItems.size(); i++) {
+            CartItem cartItem = cartItems.get(i);
+            int line = i;
+            Book book;
+            try {
+                book = books.computeIfPresent(cartItem.getBookId(), (id, current) -> {
+                    if (!current.tryReserveStock(cartItem.getQuantity())) {
+                        throw new OutOfStockException(current.getId(), cartItem.getQuantity(), current.getStock());
+                    }
+                    reservedAt[line] = (journal == null) ? 0 : journal.lastSequence();
+                    return current;
+                });
+            } catch (OutOfStockException e) {
+                stockReservationFailures.increment();
+                releaseReservations(cartItems, reserved, i);
+                throw e;
+            }
+            if (book == null) {
+                continue;
+            }
+            reserved[i] = book;
+            changedInPlace(book);
+            if (book.getStock() == 0) {
+                stockChanged(book);
+            }
+        }
 
-        // Process all items in the cart
-        for (CartItem cartItem : cart.getItems()) {
-            Book book = getBook(cartItem.getBookId());
+        // Create new order
+        Order order = new Order(orderIds.getAsLong(), customerId);
+        long[] itemsReservedAt = new long[cartItems.size()];
+        for (int i = 0; i < cartItems.size(); i++) {
+            Book book = reserved[i];
             if (book != null) {
-                // Check stock
-                if (book.getStock() < cartItem.getQuantity()) {
-                    // Not enough stock
-                    return null;
-                }
-
-                // Add to order
-                OrderItem orderItem = new OrderItem(
+                itemsReservedAt[order.getItems().size()] = reservedAt[i];
+                order.addItem(new OrderItem(
                         book.getId(),
                         book.getTitle(),
                         book.getPrice(),
-                        cartItem.getQuantity()
-                );
-                order.addItem(orderItem);
-
-                // Update stock
-                book.setStock(book.getStock() - cartItem.getQuantity());
+                        cartItems.get(i).getQuantity()
+                ));
             }
         }
 
@@ -294,26 +1272,103 @@ public class DataStore {
         order.calculateTotal();
 
         // Save the order
-        if (!orders.containsKey(customerId)) {
-            orders.put(customerId, new ArrayList<>());
-        }
-        orders.get(customerId).add(order);
+        order.setVersion(versions.incrementAndGet());
+        orders.computeIfAbsent(customerId, id -> new ConcurrentSkipListMap<>()).put(order.getId(), order);
+        ordersById.put(order.getId(), order);
 
         // Clear the cart
-        clearCart(customerId);
+        cart.clear();
+        stamp(cart);
+        suggestions.recordOrder(order);
 
+        log(Mutations.orderCreate(order, Arrays.copyOf(itemsReservedAt, order.getItems().size())));
         return order;
     }
 
+    private void releaseReservations(List<CartItem> cartItems, Book[] reserved, int count) {
+        for (int i = 0; i < count; i++) {
+            if (reserved[i] == null) {
+                continue;
+            }
+            int previous = reserved[i].releaseStock(cartItems.get(i).getQuantity());
+            changedInPlace(reserved[i]);
+            if (previous <= 0) {
+                stockChanged(reserved[i]);
+            }
+        }
+    }
+
+    // Updates the in-stock bitmap after a stock change that may have taken the book to or from zero. A change
+    // crossing zero is always followed by a call that reads the stock afterwards: a reservation emptying the
+    // stock calls it unless a release from zero has already followed, and that release calls it. Runs in
+    // compute() so it cannot overtake a replacement of the book.
+    private void stockChanged(Book book) {
+        books.computeIfPresent(book.getId(), (id, current) -> {
+            if (current == book) {
+                bookFilters.updateStock(book);
+            }
+            return current;
+        });
+    }
+
     public List<Order> getCustomerOrders(long customerId) {
-        return orders.getOrDefault(customerId, new ArrayList<>());
+        ConcurrentNavigableMap<Long, Order> customerOrders = orders.get(customerId);
+        if (customerOrders == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(customerOrders.values());
+    }
+
+    // Returns up to limit of the customer's orders with an id below beforeId, newest first
+    public List<Order> getCustomerOrders(long customerId, long beforeId, int limit) {
+        ConcurrentNavigableMap<Long, Order> customerOrders = orders.get(customerId);
+        if (customerOrders == null) {
+            return Collections.emptyList();
+        }
+        List<Order> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Order order : customerOrders.headMap(beforeId, false).descendingMap().values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(order);
+        }
+        return page;
+    }
+
+    // Statistics for the metrics endpoint
+    public int getBookCount() {
+        return books.size();
+    }
+
+    public int getAuthorCount() {
+        return authors.size();
+    }
+
+    public int getCustomerCount() {
+        return customers.size();
+    }
+
+    public int getCartCount() {
+        return carts.size();
+    }
+
+    public int getOrderCount() {
+        return ordersById.size();
+    }
+
+    public long getCheckoutConflicts() {
+        return checkoutConflicts.sum();
+    }
+
+    public long getStockReservationFailures() {
+        return stockReservationFailures.sum();
     }
 
     public Order getOrder(long customerId, long orderId) {
-        List<Order> customerOrders = getCustomerOrders(customerId);
-        return customerOrders.stream()
-                .filter(order -> order.getId() == orderId)
-                .findFirst()
-                .orElse(null);
+        Order order = ordersById.get(orderId);
+        if (order == null || order.getCustomerId() != customerId) {
+            return null;
+        }
+        return order;
     }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.bookstore.api.storage;
+
+// When the write-ahead log forces appended records to disk
+public enum FsyncPolicy {
+    // Every mutation waits until its record is forced; records appended together share one force (group commit)
+    PER_WRITE,
+    // The log is forced at most once per fsync interval; a crash can lose the last interval of mutations
+    BATCHED,
+    // The log is never forced explicitly; the OS writes the mapped pages back on its own schedule
+    OS_MANAGED;
+
+    // Accepts the configuration spellings "per-write", "batched" and "os"
+    static FsyncPolicy parse(String value) {
+        switch (value.trim().toLowerCase()) {
+            case "per-write":
+                return PER_WRITE;
+            case "batched":
+                return BATCHED;
+            case "os":
+                return OS_MANAGED;
+            default:
+                throw new IllegalArgumentException("Unknown fsync policy: " + value);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+// Binary encoding of DataStore mutations for the write-ahead log, and of entities for snapshots.
+// Every log record starts with a one-byte type; strings are an int UTF-8 length (-1 for null) plus bytes.
+final class Mutations {
+    static final byte BOOK_PUT = 1;
+    static final byte BOOK_DELETE = 2;
+    static final byte AUTHOR_PUT = 3;
+    static final byte AUTHOR_DELETE = 4;
+    static final byte CUSTOMER_PUT = 5;
+    static final byte CUSTOMER_DELETE = 6;
+    static final byte CART_ADD = 7;
+    static final byte CART_UPDATE = 8;
+    static final byte CART_REMOVE = 9;
+    static final byte CART_CLEAR = 10;
+    static final byte ORDER_CREATE = 11;
+    static final byte CART_BATCH = 12;
+
+    private Mutations() {}
+
+    // Log record encoders
+
+    static byte[] bookPut(Book book) {
+        return encode(BOOK_PUT, out -> writeBook(out, book, book.getStock()));
+    }
+
+    static byte[] bookDelete(long id) {
+        return encode(BOOK_DELETE, out -> out.writeLong(id));
+    }
+
+    static byte[] authorPut(Author author) {
+        return encode(AUTHOR_PUT, out -> writeAuthor(out, author));
+    }
+
+    static byte[] authorDelete(long id) {
+        return encode(AUTHOR_DELETE, out -> out.writeLong(id));
+    }
+
+    static byte[] customerPut(Customer customer) {
+        return encode(CUSTOMER_PUT, out -> writeCustomer(out, customer));
+    }
+
+    static byte[] customerDelete(long id) {
+        return encode(CUSTOMER_DELETE, out -> out.writeLong(id));
+    }
+
+    static byte[] cartAdd(long customerId, long bookId, int quantity) {
+        return encode(CART_ADD, out -> {
+            out.writeLong(customerId);
+            out.writeLong(bookId);
+            out.writeInt(quantity);
+        });
+    }
+
+    static byte[] cartUpdate(long customerId, long bookId, int quantity) {
+        return encode(CART_UPDATE, out -> {
+            out.writeLong(customerId);
+            out.writeLong(bookId);
+            out.writeInt(quantity);
+        });
+    }
+
+    static byte[] cartRemove(long customerId, long bookId) {
+        return encode(CART_REMOVE, out -> {
+            out.writeLong(customerId);
+            out.writeLong(bookId);
+        });
+    }
+
+    static byte[] cartClear(long customerId) {
+        return encode(CART_CLEAR, out -> out.writeLong(customerId));
+    }
+
+    // One record for a whole batch update; each operation is the CART_ADD/UPDATE/REMOVE type, book id and quantity
+    static byte[] cartBatch(long customerId, List<CartOperation> operations) {
+        return encode(CART_BATCH, out -> {
+            out.writeLong(customerId);
+            out.writeInt(operations.size());
+            for (CartOperation operation : operations) {
+                switch (operation.getOp()) {
+                    case ADD:
+                        out.writeByte(CART_ADD);
+                        break;
+                    case UPDATE:
+                        out.writeByte(CART_UPDATE);
+                        break;
+                    default:
+                        out.writeByte(CART_REMOVE);
+                        break;
+                }
+                out.writeLong(operation.getBookId());
+                out.writeInt(operation.getQuantity());
+            }
+        });
+    }
+
+    // Replaying an order also takes its quantities out of stock and clears the cart, as checkout did. Each item
+    // carries the log sequence its stock was reserved at, see DataStore.replayOrder().
+    static byte[] orderCreate(Order order, long[] reservedAt) {
+        return encode(ORDER_CREATE, out -> {
+            writeOrder(out, order);
+            for (long sequence : reservedAt) {
+                out.writeLong(sequence);
+            }
+        });
+    }
+
+    // Re-applies one log record, written at the given sequence, to the store
+    static void apply(DataStore store, ByteBuffer record, long sequence) {
+        byte type = record.get();
+        switch (type) {
+            case BOOK_PUT: {
+                Book book = readBook(record);
+                store.replayBook(book, sequence);
+                store.restoreSequences(book.getId() + 1, 0, 0, 0);
+                break;
+            }
+            case BOOK_DELETE:
+                store.deleteBook(record.getLong());
+                break;
+            case AUTHOR_PUT: {
+                Author author = readAuthor(record);
+                store.restoreAuthor(author);
+                store.restoreSequences(0, author.getId() + 1, 0, 0);
+                break;
+            }
+            case AUTHOR_DELETE:
+                store.deleteAuthor(record.getLong());
+                break;
+            case CUSTOMER_PUT: {
+                Customer customer = readCustomer(record);
+                store.restoreCustomer(customer);
+                store.restoreSequences(0, 0, customer.getId() + 1, 0);
+                break;
+            }
+            case CUSTOMER_DELETE:
+                store.deleteCustomer(record.getLong());
+                break;
+            case CART_ADD: {
+                long customerId = record.getLong();
+                store.addToCart(customerId, new CartItem(record.getLong(), record.getInt()));
+                break;
+            }
+            case CART_UPDATE: {
+                long customerId = record.getLong();
+                store.updateCartItem(customerId, record.getLong(), record.getInt());
+                break;
+            }
+            case CART_REMOVE: {
+                long customerId = record.getLong();
+                store.removeFromCart(customerId, record.getLong());
+                break;
+            }
+            case CART_CLEAR:
+                store.clearCart(record.getLong());
+                break;
+            case CART_BATCH: {
+                long customerId = record.getLong();
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte op = record.get();
+                    long bookId = record.getLong();
+                    int quantity = record.getInt();
+                    if (op == CART_ADD) {
+                        store.addToCart(customerId, new CartItem(bookId, quantity));
+                    } else if (op == CART_UPDATE) {
+                        store.updateCartItem(customerId, bookId, quantity);
+                    } else {
+                        store.removeFromCart(customerId, bookId);
+                    }
+                }
+                break;
+            }
+            case ORDER_CREATE: {
+                Order order = readOrder(record);
+                long[] reservedAt = new long[order.getItems().size()];
+                for (int i = 0; i < reservedAt.length; i++) {
+                    reservedAt[i] = record.getLong();
+                }
+                store.replayOrder(order, reservedAt);
+                store.restoreSequences(0, 0, 0, order.getId() + 1);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown log record type " + type);
+        }
+    }
+
+    // Entity encoding, shared by log records and snapshot files
+
+    static void writeBook(DataOutput out, Book book, int stock) throws IOException {
+        out.writeLong(book.getId());
+        writeString(out, book.getTitle());
+        out.writeLong(book.getAuthorId());
+        writeString(out, book.getIsbn());
+        out.writeInt(book.getPublicationYear());
+        out.writeDouble(book.getPrice());
+        out.writeInt(stock);
+    }
+
+    static Book readBook(ByteBuffer in) {
+        return new Book(in.getLong(), readString(in), in.getLong(), readString(in), in.getInt(), in.getDouble(), in.getInt());
+    }
+
+    static void writeAuthor(DataOutput out, Author author) throws IOException {
+        out.writeLong(author.getId());
+        writeString(out, author.getName());
+        writeString(out, author.getBiography());
+    }
+
+    static Author readAuthor(ByteBuffer in) {
+        return new Author(in.getLong(), readString(in), readString(in));
+    }
+
+    static void writeCustomer(DataOutput out, Customer customer) throws IOException {
+        out.writeLong(customer.getId());
+        writeString(out, customer.getName());
+        writeString(out, customer.getEmail());
+        writeString(out, customer.getPassword());
+    }
+
+    static Customer readCustomer(ByteBuffer in) {
+        return new Customer(in.getLong(), readString(in), readString(in), readString(in));
+    }
+
+    static void writeCart(DataOutput out, long customerId, List<CartItem> items) throws IOException {
+        out.writeLong(customerId);
+        out.writeInt(items.size());
+        for (CartItem item : items) {
+            out.writeLong(item.getBookId());
+            out.writeInt(item.getQuantity());
+        }
+    }
+
+    static Cart readCart(ByteBuffer in) {
+        Cart cart = new Cart(in.getLong());
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            cart.addItem(new CartItem(in.getLong(), in.getInt()));
+        }
+        return cart;
+    }
+
+    static void writeOrder(DataOutput out, Order order) throws IOException {
+        out.writeLong(order.getId());
+        out.writeLong(order.getCustomerId());
+        out.writeLong(order.getOrderDate().getTime());
+        out.writeDouble(order.getTotalAmount());
+        out.writeInt(order.getItems().size());
+        for (OrderItem item : order.getItems()) {
+            out.writeLong(item.getBookId());
+            writeString(out, item.getBookTitle());
+            out.writeDouble(item.getPrice());
+            out.writeInt(item.getQuantity());
+        }
+    }
+
+    static Order readOrder(ByteBuffer in) {
+        Order order = new Order(in.getLong(), in.getLong());
+        order.setOrderDate(new Date(in.getLong()));
+        double total = in.getDouble();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            order.getItems().add(new OrderItem(in.getLong(), readString(in), in.getDouble(), in.getInt()));
+        }
+        order.setTotalAmount(total);
+        return order;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(byte type, Body body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException e) {
+            // Writes to a byte array cannot fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
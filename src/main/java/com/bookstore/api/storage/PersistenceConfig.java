@@ -0,0 +1,69 @@
+package com.bookstore.api.storage;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Persistence settings, read from system properties. Without bookstore.data.dir the store is memory-only.
+final class PersistenceConfig {
+    static final String DATA_DIR = "bookstore.data.dir";
+    static final String FSYNC_POLICY = "bookstore.wal.fsync";
+    static final String FSYNC_INTERVAL_MS = "bookstore.wal.fsync.interval.ms";
+    static final String SEGMENT_MB = "bookstore.wal.segment.mb";
+    static final String SNAPSHOT_INTERVAL_S = "bookstore.snapshot.interval.s";
+    static final long MAX_SEGMENT_MB = Integer.MAX_VALUE / (1024 * 1024);
+
+    private final Path dataDirectory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final int segmentBytes;
+    private final long snapshotIntervalSeconds;
+
+    PersistenceConfig(Path dataDirectory, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                      int segmentBytes, long snapshotIntervalSeconds) {
+        this.dataDirectory = dataDirectory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.segmentBytes = segmentBytes;
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    static PersistenceConfig fromSystemProperties() {
+        String dir = System.getProperty(DATA_DIR);
+        // Segments are mapped as a single buffer, so their size must fit in an int
+        long segmentMb = Long.getLong(SEGMENT_MB, 64);
+        if (segmentMb < 1 || segmentMb > MAX_SEGMENT_MB) {
+            throw new IllegalArgumentException(
+                    SEGMENT_MB + " must be between 1 and " + MAX_SEGMENT_MB + " but was " + segmentMb);
+        }
+        return new PersistenceConfig(
+                (dir == null || dir.isEmpty()) ? null : Paths.get(dir),
+                FsyncPolicy.parse(System.getProperty(FSYNC_POLICY, "batched")),
+                Long.getLong(FSYNC_INTERVAL_MS, 10),
+                (int) (segmentMb * 1024 * 1024),
+                Long.getLong(SNAPSHOT_INTERVAL_S, 300));
+    }
+
+    boolean isEnabled() {
+        return dataDirectory != null;
+    }
+
+    Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    long getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+}
@@ -0,0 +1,282 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Compact binary snapshots of the whole store, one directory per snapshot (snapshot-<log sequence>).
+// meta.bin holds the log sequence and id counters. Each partition (authors, books, customers, carts, orders)
+// is split into chunk files <partition>-<n>.bin of at most CHUNK_ENTITIES entities: int magic, int count, entities.
+// Chunks are written and loaded in parallel on a fork-join pool; loading reads them through memory-mapped channels.
+// A snapshot is written to a temporary directory and renamed into place, so a visible snapshot is complete.
+final class SnapshotStore {
+    private static final int MAGIC = 0x42534E32; // "BSN2"
+    private static final int CHUNK_ENTITIES = 1 << 18;
+    private static final String PREFIX = "snapshot-";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String META = "meta.bin";
+
+    private final Path directory;
+
+    // Consistent copy of the store's contents at a log sequence, taken while mutations are paused
+    static final class Snapshot {
+        long sequence;
+        long nextBookId;
+        long nextAuthorId;
+        long nextCustomerId;
+        long nextOrderId;
+        final List<Author> authors = new ArrayList<>();
+        final List<Book> books = new ArrayList<>();
+        int[] stocks;
+        final List<Customer> customers = new ArrayList<>();
+        final List<Long> cartOwners = new ArrayList<>();
+        final List<List<CartItem>> cartItems = new ArrayList<>();
+        final List<Order> orders = new ArrayList<>();
+    }
+
+    private interface EntityWriter {
+        void write(DataOutputStream out, int index) throws IOException;
+    }
+
+    SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    void write(Snapshot snapshot) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(String.format("%s%016d", PREFIX, snapshot.sequence));
+        Path temp = directory.resolve(target.getFileName() + TEMP_SUFFIX);
+        deleteRecursively(temp);
+        Files.createDirectories(temp);
+
+        try (DataOutputStream out = open(temp.resolve(META))) {
+            out.writeInt(MAGIC);
+            out.writeLong(snapshot.sequence);
+            out.writeLong(snapshot.nextBookId);
+            out.writeLong(snapshot.nextAuthorId);
+            out.writeLong(snapshot.nextCustomerId);
+            out.writeLong(snapshot.nextOrderId);
+        }
+
+        List<Callable<Void>> chunks = new ArrayList<>();
+        addChunks(chunks, temp, "authors", snapshot.authors.size(),
+                (out, i) -> Mutations.writeAuthor(out, snapshot.authors.get(i)));
+        addChunks(chunks, temp, "books", snapshot.books.size(),
+                (out, i) -> Mutations.writeBook(out, snapshot.books.get(i), snapshot.stocks[i]));
+        addChunks(chunks, temp, "customers", snapshot.customers.size(),
+                (out, i) -> Mutations.writeCustomer(out, snapshot.customers.get(i)));
+        addChunks(chunks, temp, "carts", snapshot.cartOwners.size(),
+                (out, i) -> Mutations.writeCart(out, snapshot.cartOwners.get(i), snapshot.cartItems.get(i)));
+        addChunks(chunks, temp, "orders", snapshot.orders.size(),
+                (out, i) -> Mutations.writeOrder(out, snapshot.orders.get(i)));
+        runParallel(chunks);
+
+        // The chunk files are forced as they are closed; their directory entries and the rename are only durable
+        // once the directories holding them are, and the caller deletes the log segments next
+        forceDirectory(temp);
+        deleteRecursively(target);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+
+        // Older snapshots are superseded
+        for (Path old : listSnapshots()) {
+            if (!old.equals(target)) {
+                deleteRecursively(old);
+            }
+        }
+    }
+
+    // Loads the newest snapshot into the store; returns its log sequence, or -1 if there is none.
+    // Chunks of all partitions load concurrently; DataStore's maps and indexes accept concurrent inserts.
+    long load(DataStore store) throws IOException {
+        List<Path> snapshots = listSnapshots();
+        if (snapshots.isEmpty()) {
+            return -1;
+        }
+        Path source = snapshots.get(snapshots.size() - 1);
+
+        ByteBuffer meta = map(source.resolve(META));
+        checkMagic(meta, source);
+        long sequence = meta.getLong();
+        store.restoreSequences(meta.getLong(), meta.getLong(), meta.getLong(), meta.getLong());
+
+        List<Callable<Void>> chunks = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(source, "*-*.bin")) {
+            for (Path file : files) {
+                chunks.add(() -> {
+                    loadChunk(store, file);
+                    return null;
+                });
+            }
+        }
+        runParallel(chunks);
+        return sequence;
+    }
+
+    private static void loadChunk(DataStore store, Path file) throws IOException {
+        ByteBuffer in = partition(file);
+        String name = file.getFileName().toString();
+        String partition = name.substring(0, name.indexOf('-'));
+        for (int i = in.getInt(); i > 0; i--) {
+            switch (partition) {
+                case "authors":
+                    store.restoreAuthor(Mutations.readAuthor(in));
+                    break;
+                case "books":
+                    store.restoreBook(Mutations.readBook(in));
+                    break;
+                case "customers":
+                    store.restoreCustomer(Mutations.readCustomer(in));
+                    break;
+                case "carts":
+                    store.restoreCart(Mutations.readCart(in));
+                    break;
+                case "orders":
+                    store.restoreOrder(Mutations.readOrder(in));
+                    break;
+                default:
+                    throw new IOException("Unknown snapshot partition: " + file);
+            }
+        }
+    }
+
+    private static void addChunks(List<Callable<Void>> chunks, Path dir, String partition, int count, EntityWriter writer) {
+        int chunkCount = Math.max(1, (count + CHUNK_ENTITIES - 1) / CHUNK_ENTITIES);
+        for (int c = 0; c < chunkCount; c++) {
+            int from = c * CHUNK_ENTITIES;
+            int to = Math.min(count, from + CHUNK_ENTITIES);
+            Path file = dir.resolve(String.format("%s-%05d.bin", partition, c));
+            chunks.add(() -> {
+                try (DataOutputStream out = open(file)) {
+                    header(out, to - from);
+                    for (int i = from; i < to; i++) {
+                        writer.write(out, i);
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    private static void runParallel(List<Callable<Void>> tasks) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing snapshot", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static ByteBuffer partition(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        checkMagic(buffer, file);
+        return buffer;
+    }
+
+    private static void checkMagic(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a bookstore snapshot file: " + file);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void header(DataOutputStream out, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(count);
+    }
+
+    // Output stream whose close() also forces the file to disk
+    private static DataOutputStream open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    flush();
+                    channel.force(true);
+                } finally {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    // Directories can be opened for reading and forced on Linux and macOS; elsewhere (Windows) the open fails and
+    // the platform gives no way to order directory updates
+    private static void forceDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path) && !path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    snapshots.add(path);
+                }
+            }
+        }
+        snapshots.sort(null);
+        return snapshots;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
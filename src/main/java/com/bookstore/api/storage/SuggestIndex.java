@@ -0,0 +1,551 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.Author;
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.Order;
+import com.bookstore.api.models.OrderItem;
+import com.bookstore.api.models.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Typeahead behind GET /books/suggest: book titles and author names in case-insensitive order, so the
+// completions of a prefix are one contiguous run. Ranked by popularity: the number of orders containing a book,
+// and for an author the sum over their books. Entries are kept in sorted chunks that know their most popular
+// entry. A query visits the chunks of the run best first and stops at the first chunk that cannot beat the
+// k-th match found so far, so a one-letter prefix over a million titles reads a handful of chunks rather than
+// every completion. Books, authors and orders update the entries in place as they are written.
+//
+// Books and authors take the write lock, queries share the read lock. Orders take no lock: popularity is an
+// atomic counter per entry, and a chunk's max is raised with a compare-and-set, so it stays an upper bound of
+// its entries while orders come in. Lower maxima are only ever computed for a fresh chunk that replaces the old
+// one under the write lock, after its entries point at it; an order that still raised the old chunk has already
+// counted in what the fresh chunk reads. Orders racing with a book's change of author may credit the old author.
+final class SuggestIndex {
+    private static final int CHUNK = 128;
+    private static final byte BOOK = 0;
+    private static final byte AUTHOR = 1;
+
+    // Text ignoring case, then books before authors, then id: a total order even for equal titles
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int order = Long.compareUnsigned(a.head, b.head);
+        if (order == 0) {
+            order = String.CASE_INSENSITIVE_ORDER.compare(a.text, b.text);
+        }
+        if (order != 0) {
+            return order;
+        }
+        return a.kind != b.kind ? Byte.compare(a.kind, b.kind) : Long.compare(a.id, b.id);
+    };
+
+    private final TreeMap<Entry, Chunk> chunks = new TreeMap<>(ORDER);
+    // Entries by book and author id, for updates that only know the id
+    private volatile Entry[] bookEntries = new Entry[0];
+    private volatile Entry[] authorEntries = new Entry[0];
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Entry {
+        final String text;
+        // First characters of the text, see head()
+        final long head;
+        final byte kind;
+        final long id;
+        // Author of a book entry, whose popularity includes the book's
+        final long authorId;
+        volatile long popularity;
+        // Chunk holding the entry, null while the entry is not in the index
+        volatile Chunk chunk;
+
+        Entry(String text, byte kind, long id, long authorId, long popularity) {
+            this.text = text;
+            this.head = head(text);
+            this.kind = kind;
+            this.id = id;
+            this.authorId = authorId;
+            this.popularity = popularity;
+        }
+    }
+
+    // Sorted run of entries, filed in the chunk map under a lower bound of them like BookFilterIndex's keys
+    private static final class Chunk {
+        Entry[] entries;
+        int size;
+        volatile long max;
+
+        // Takes over the entries, then reads their popularity; see the class comment for why in that order
+        Chunk(Entry[] entries, int size) {
+            this.entries = entries;
+            this.size = size;
+            for (int i = 0; i < size; i++) {
+                entries[i].chunk = this;
+            }
+            long max = 0;
+            for (int i = 0; i < size; i++) {
+                max = Math.max(max, entries[i].popularity);
+            }
+            this.max = max;
+        }
+
+        void raiseMax(long popularity) {
+            long current;
+            while ((current = max) < popularity && !MAX.compareAndSet(this, current, popularity)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<Entry> POPULARITY =
+            AtomicLongFieldUpdater.newUpdater(Entry.class, "popularity");
+    private static final AtomicLongFieldUpdater<Chunk> MAX = AtomicLongFieldUpdater.newUpdater(Chunk.class, "max");
+
+    void putBook(Book book) {
+        lock.writeLock().lock();
+        try {
+            int id = bit(book.getId());
+            Entry previous = get(bookEntries, id);
+            if (previous != null && Objects.equals(previous.text, book.getTitle())
+                    && previous.authorId == book.getAuthorId()) {
+                return;
+            }
+            long popularity = previous != null ? previous.popularity : 0;
+            if (previous != null) {
+                remove(previous);
+                addPopularity(get(authorEntries, previous.authorId), -popularity);
+            }
+            Entry entry = new Entry(book.getTitle(), BOOK, id, book.getAuthorId(), popularity);
+            bookEntries = set(bookEntries, id, entry);
+            insert(entry);
+            addPopularity(get(authorEntries, book.getAuthorId()), popularity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeBook(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = get(bookEntries, id);
+            if (entry != null) {
+                remove(entry);
+                bookEntries[(int) id] = null;
+                addPopularity(get(authorEntries, entry.authorId), -entry.popularity);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putAuthor(Author author) {
+        lock.writeLock().lock();
+        try {
+            int id = bit(author.getId());
+            Entry previous = get(authorEntries, id);
+            if (previous != null && Objects.equals(previous.text, author.getName())) {
+                return;
+            }
+            if (previous != null) {
+                remove(previous);
+            }
+            Entry entry = new Entry(author.getName(), AUTHOR, id, id, previous != null ? previous.popularity : 0);
+            authorEntries = set(authorEntries, id, entry);
+            insert(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeAuthor(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = get(authorEntries, id);
+            if (entry != null) {
+                remove(entry);
+                authorEntries[(int) id] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Lock-free, see the class comment
+    void recordOrder(Order order) {
+        for (OrderItem item : order.getItems()) {
+            Entry entry = get(bookEntries, item.getBookId());
+            if (entry != null) {
+                increment(entry);
+                increment(get(authorEntries, entry.authorId));
+            }
+        }
+    }
+
+    private static void increment(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        long popularity = POPULARITY.incrementAndGet(entry);
+        // Follow the entry if a fresh chunk took it over meanwhile
+        Chunk seen = null;
+        for (Chunk chunk = entry.chunk; chunk != null && chunk != seen; chunk = entry.chunk) {
+            chunk.raiseMax(popularity);
+            seen = chunk;
+        }
+    }
+
+    // Replaces the index with the given books and authors, counting popularity from the given orders. Sorting
+    // everything once is much cheaper than inserting entries one by one after a snapshot load.
+    void rebuild(Iterable<Book> books, Iterable<Author> authors, Iterable<Order> orders) {
+        lock.writeLock().lock();
+        try {
+            List<Entry> all = new ArrayList<>();
+            Entry[] bookEntries = new Entry[0];
+            Entry[] authorEntries = new Entry[0];
+            for (Book book : books) {
+                Entry entry = new Entry(book.getTitle(), BOOK, bit(book.getId()), book.getAuthorId(), 0);
+                bookEntries = set(bookEntries, entry.id, entry);
+                all.add(entry);
+            }
+            for (Author author : authors) {
+                Entry entry = new Entry(author.getName(), AUTHOR, bit(author.getId()), author.getId(), 0);
+                authorEntries = set(authorEntries, entry.id, entry);
+                if (entry.text != null) {
+                    all.add(entry);
+                }
+            }
+            for (Order order : orders) {
+                for (OrderItem item : order.getItems()) {
+                    Entry entry = get(bookEntries, item.getBookId());
+                    if (entry != null) {
+                        entry.popularity++;
+                        Entry author = get(authorEntries, entry.authorId);
+                        if (author != null) {
+                            author.popularity++;
+                        }
+                    }
+                }
+            }
+
+            Entry[] sorted = sort(all.toArray(new Entry[0]));
+            chunks.clear();
+            for (int start = 0; start < sorted.length; start += CHUNK) {
+                int end = Math.min(sorted.length, start + CHUNK);
+                chunks.put(sorted[start], new Chunk(Arrays.copyOfRange(sorted, start, end), end - start));
+            }
+            this.bookEntries = bookEntries;
+            this.authorEntries = authorEntries;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sorts entries in ORDER. A comparison sort would dereference two scattered entries per comparison, which
+    // costs seconds for a million titles, so the heads are radix sorted as primitives, 16 bits per pass, with the
+    // entry indexes carried along. Runs of equal heads, such as titles starting with "The ", go on by the
+    // following characters; the full comparison only orders small runs.
+    private static Entry[] sort(Entry[] entries) {
+        int n = entries.length;
+        long[] heads = new long[n];
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            heads[i] = entries[i].head;
+            indexes[i] = i;
+        }
+        long[] headBuffer = new long[n];
+        int[] indexBuffer = new int[n];
+        int[] starts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(starts, 0);
+            for (int i = 0; i < n; i++) {
+                starts[(int) (heads[i] >>> shift & 0xFFFF) + 1]++;
+            }
+            for (int digit = 0; digit < 1 << 16; digit++) {
+                starts[digit + 1] += starts[digit];
+            }
+            for (int i = 0; i < n; i++) {
+                int to = starts[(int) (heads[i] >>> shift & 0xFFFF)]++;
+                headBuffer[to] = heads[i];
+                indexBuffer[to] = indexes[i];
+            }
+            long[] sortedHeads = headBuffer;
+            headBuffer = heads;
+            heads = sortedHeads;
+            int[] sortedIndexes = indexBuffer;
+            indexBuffer = indexes;
+            indexes = sortedIndexes;
+        }
+
+        Entry[] sorted = new Entry[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = entries[indexes[i]];
+        }
+        for (int start = 0, end; start < n; start = end) {
+            end = start + 1;
+            while (end < n && heads[end] == heads[start]) {
+                end++;
+            }
+            if (decisive(heads[start], 4)) {
+                sortRun(sorted, start, end, 4);
+            } else {
+                Arrays.sort(sorted, start, end, ORDER);
+            }
+        }
+        return sorted;
+    }
+
+    // Sorts a run of entries that agree on their first offset characters by the next two, packed with the run
+    // index into one long so the sort runs on primitives, then recurses into runs that agree on those too
+    private static void sortRun(Entry[] sorted, int from, int to, int offset) {
+        int n = to - from;
+        if (n < 16) {
+            Arrays.sort(sorted, from, to, ORDER);
+            return;
+        }
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            String text = sorted[from + i].text;
+            long pair = (long) folded(text, offset) << 16 | folded(text, offset + 1);
+            // Flipping the sign bit makes the signed sort order the unsigned one
+            keys[i] = (pair << 32 | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        Entry[] run = Arrays.copyOfRange(sorted, from, to);
+        for (int i = 0; i < n; i++) {
+            sorted[from + i] = run[(int) keys[i]];
+        }
+        for (int start = 0, end; start < n; start = end) {
+            long pair = (keys[start] ^ Long.MIN_VALUE) >>> 32;
+            end = start + 1;
+            while (end < n && (keys[end] ^ Long.MIN_VALUE) >>> 32 == pair) {
+                end++;
+            }
+            if (end - start > 1) {
+                if (decisive(pair, 2)) {
+                    sortRun(sorted, from + start, from + end, offset + 2);
+                } else {
+                    Arrays.sort(sorted, from + start, from + end, ORDER);
+                }
+            }
+        }
+    }
+
+    // Whether equal packed characters leave the order to the characters after them: not if a text may have
+    // ended there or a character was collapsed
+    private static boolean decisive(long packed, int characters) {
+        for (int i = 0; i < characters; i++) {
+            long c = packed >>> (16 * i) & 0xFFFF;
+            if (c == 0 || c == Character.MIN_SURROGATE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The most popular titles and author names starting with prefix, ignoring case; ties in text order
+    List<Suggestion> suggest(String prefix, int limit) {
+        Entry probe = new Entry(prefix, Byte.MIN_VALUE, Long.MIN_VALUE, 0, 0);
+        // Best matches so far, best first, with their positions in text order (chunk of the run << 16 | index)
+        // to break popularity ties without comparing text
+        Entry[] best = new Entry[limit];
+        long[] positions = new long[limit];
+        int found = 0;
+        lock.readLock().lock();
+        try {
+            // The run of completions starts in the chunk at or before the probe and ends before the first chunk
+            // that starts past the prefix
+            Entry first = chunks.floorKey(probe);
+            Chunk[] run = new Chunk[16];
+            int count = 0;
+            for (Chunk chunk : chunks.tailMap(first != null ? first : probe, true).values()) {
+                if (count > 0 && !matches(chunk.entries[0], prefix)) {
+                    break;
+                }
+                if (count == run.length) {
+                    run = Arrays.copyOf(run, 2 * count);
+                }
+                run[count++] = chunk;
+            }
+
+            // Visit the chunks by their best entry, most popular first and in text order among equals. Encoded
+            // as (max << 24 | ~position), so sorting longs gives that order backwards.
+            long[] visits = new long[count];
+            for (int i = 0; i < count; i++) {
+                visits[i] = Math.min(run[i].max, (1L << 38) - 1) << 24 | (0xFFFFFF - i);
+            }
+            Arrays.sort(visits);
+            for (int v = count - 1; v >= 0; v--) {
+                int c = 0xFFFFFF - (int) (visits[v] & 0xFFFFFF);
+                Chunk chunk = run[c];
+                // Nothing here or in the chunks after it can displace the k-th match
+                if (found == limit && !better(chunk.max, (long) c << 16, best[limit - 1].popularity,
+                        positions[limit - 1])) {
+                    break;
+                }
+                for (int i = 0; i < chunk.size; i++) {
+                    Entry entry = chunk.entries[i];
+                    long position = (long) c << 16 | i;
+                    // Most entries lose on popularity without their text being looked at
+                    if ((found < limit || better(entry.popularity, position, best[limit - 1].popularity,
+                            positions[limit - 1])) && matches(entry, prefix)) {
+                        found = offer(best, positions, found, entry, position);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Suggestion> suggestions = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            Entry entry = best[i];
+            suggestions.add(new Suggestion(entry.kind == BOOK ? "book" : "author", entry.id, entry.text));
+        }
+        return suggestions;
+    }
+
+    // The first four characters folded the way String.CASE_INSENSITIVE_ORDER compares them, 16 bits each, so
+    // most comparisons are decided by one long. From the surrogate range up, where Java versions differ in how
+    // they compare, characters collapse to one value and leave the order to the full comparison.
+    private static long head(String text) {
+        long head = 0;
+        boolean cut = false;
+        for (int i = 0; i < 4; i++) {
+            int c = cut ? 0 : folded(text, i);
+            cut |= c == Character.MIN_SURROGATE;
+            head = head << 16 | c;
+        }
+        return head;
+    }
+
+    // Character i folded for comparison; 0 past the end, and characters from the surrogate range up collapsed
+    private static int folded(String text, int i) {
+        if (text == null || i >= text.length()) {
+            return 0;
+        }
+        return Math.min(Character.toLowerCase(Character.toUpperCase(text.charAt(i))), Character.MIN_SURROGATE);
+    }
+
+    private static boolean matches(Entry entry, String prefix) {
+        return entry.text.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    // Adds a match to the best ones, which are kept sorted best first; returns the new count
+    private static int offer(Entry[] best, long[] positions, int found, Entry entry, long position) {
+        int i = found;
+        if (found == best.length) {
+            i--;
+        } else {
+            found++;
+        }
+        while (i > 0 && better(entry.popularity, position, best[i - 1].popularity, positions[i - 1])) {
+            best[i] = best[i - 1];
+            positions[i] = positions[i - 1];
+            i--;
+        }
+        best[i] = entry;
+        positions[i] = position;
+        return found;
+    }
+
+    private static boolean better(long popularity, long position, long otherPopularity, long otherPosition) {
+        return popularity > otherPopularity || (popularity == otherPopularity && position < otherPosition);
+    }
+
+    private void insert(Entry entry) {
+        if (entry.text == null) {
+            return;
+        }
+        Map.Entry<Entry, Chunk> floor = chunks.floorEntry(entry);
+        if (floor == null) {
+            floor = chunks.firstEntry();
+            if (floor == null) {
+                chunks.put(entry, new Chunk(new Entry[] {entry, null, null, null}, 1));
+                return;
+            }
+            // New first entry: lower the first chunk's bound
+            chunks.remove(floor.getKey());
+            chunks.put(entry, floor.getValue());
+            floor = chunks.firstEntry();
+        }
+        Chunk chunk = floor.getValue();
+        int i = -Arrays.binarySearch(chunk.entries, 0, chunk.size, entry, ORDER) - 1;
+        if (chunk.size == chunk.entries.length) {
+            chunk.entries = Arrays.copyOf(chunk.entries, Math.min(2 * chunk.size, 2 * CHUNK));
+        }
+        System.arraycopy(chunk.entries, i, chunk.entries, i + 1, chunk.size - i);
+        chunk.entries[i] = entry;
+        chunk.size++;
+        entry.chunk = chunk;
+        chunk.raiseMax(entry.popularity);
+        if (chunk.size == 2 * CHUNK) {
+            Chunk upper = new Chunk(Arrays.copyOfRange(chunk.entries, CHUNK, 2 * CHUNK), CHUNK);
+            chunks.put(floor.getKey(), new Chunk(Arrays.copyOf(chunk.entries, CHUNK), CHUNK));
+            chunks.put(upper.entries[0], upper);
+        }
+    }
+
+    private void remove(Entry entry) {
+        Map.Entry<Entry, Chunk> floor = entry.text != null ? chunks.floorEntry(entry) : null;
+        if (floor == null) {
+            return;
+        }
+        Chunk chunk = floor.getValue();
+        int i = Arrays.binarySearch(chunk.entries, 0, chunk.size, entry, ORDER);
+        if (i < 0) {
+            return;
+        }
+        System.arraycopy(chunk.entries, i + 1, chunk.entries, i, chunk.size - i - 1);
+        chunk.entries[--chunk.size] = null;
+        entry.chunk = null;
+        if (chunk.size == 0) {
+            chunks.remove(floor.getKey());
+        } else if (entry.popularity >= chunk.max) {
+            refresh(floor);
+        }
+    }
+
+    // Replaces a chunk by a fresh one, whose max is exact again
+    private void refresh(Map.Entry<Entry, Chunk> floor) {
+        Chunk chunk = floor.getValue();
+        chunks.put(floor.getKey(), new Chunk(Arrays.copyOf(chunk.entries, chunk.entries.length), chunk.size));
+    }
+
+    // Moves popularity between entries while books and authors change; callers hold the write lock
+    private void addPopularity(Entry entry, long delta) {
+        if (entry == null || delta == 0) {
+            return;
+        }
+        long popularity = POPULARITY.addAndGet(entry, delta);
+        Chunk chunk = entry.chunk;
+        if (chunk == null) {
+            return;
+        }
+        if (delta > 0) {
+            chunk.raiseMax(popularity);
+        } else if (popularity - delta >= chunk.max) {
+            refresh(chunks.floorEntry(entry));
+        }
+    }
+
+    private static Entry get(Entry[] entries, long id) {
+        return id >= 0 && id < entries.length ? entries[(int) id] : null;
+    }
+
+    private static Entry[] set(Entry[] entries, long id, Entry entry) {
+        if (id >= entries.length) {
+            entries = Arrays.copyOf(entries, (int) Math.max(id + 1, entries.length + (entries.length >> 1) + 16));
+        }
+        entries[(int) id] = entry;
+        return entries;
+    }
+
+    // Book and author ids are assigned sequentially and stay far below 2^31
+    private static int bit(long id) {
+        return Math.toIntExact(id);
+    }
+}
@@ -0,0 +1,291 @@
+package com.bookstore.api.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// In-memory inverted index with BM25 ranking. Each term maps to postings packed into one primitive array
+// sorted by document id (document id, term frequency, document length), so an indexed document costs array
+// slots rather than objects. A document is re-indexed as a whole whenever it changes; callers pass the tokens
+// of the old and the new version. Terms are spread over stripes by hash, each a sorted map behind its own
+// read-write lock, so writers changing different terms proceed in parallel and hold a lock for one term at a time.
+// Callers serialize the updates of one document, so a search may only see a document between two versions.
+final class TextIndex {
+    // Standard BM25 parameters: term frequency saturation and document length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Terms a prefix may expand to, so a one-letter query stays cheap
+    private static final int MAX_PREFIX_TERMS = 64;
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder totalLength = new LongAdder();
+
+    private static final class Stripe {
+        final TreeMap<String, Postings> terms = new TreeMap<>();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+    TextIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    interface ScoreSink {
+        void add(long document, double score);
+    }
+
+    // Sorted by document id; two longs per posting: the document id, then frequency << 32 | document length.
+    // One array per term keeps rare terms down to two small objects.
+    private static final class Postings {
+        long[] entries = new long[2];
+        int size;
+
+        long document(int i) {
+            return entries[2 * i];
+        }
+
+        int frequency(int i) {
+            return (int) (entries[2 * i + 1] >>> 32);
+        }
+
+        int length(int i) {
+            return (int) entries[2 * i + 1];
+        }
+
+        void put(long document, int frequency, int length) {
+            int i = indexOf(document);
+            if (i < 0) {
+                i = -i - 1;
+                if (2 * size == entries.length) {
+                    entries = Arrays.copyOf(entries, 2 * (size + (size >> 1) + 1));
+                }
+                System.arraycopy(entries, 2 * i, entries, 2 * i + 2, 2 * (size - i));
+                size++;
+            }
+            entries[2 * i] = document;
+            entries[2 * i + 1] = (long) frequency << 32 | (length & 0xFFFFFFFFL);
+        }
+
+        void remove(long document) {
+            int i = indexOf(document);
+            if (i >= 0) {
+                System.arraycopy(entries, 2 * i + 2, entries, 2 * i, 2 * (size - i - 1));
+                size--;
+            }
+        }
+
+        // Index of the document, or -(insertion point) - 1 if absent
+        private int indexOf(long document) {
+            // New documents get increasing ids, so most inserts append
+            if (size == 0 || document(size - 1) < document) {
+                return -(size + 1);
+            }
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = document(mid);
+                if (value < document) {
+                    low = mid + 1;
+                } else if (value > document) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    // Lowercased runs of letters and digits
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Replaces the indexed tokens of a document: oldTokens is null for a new document, newTokens null to remove it.
+    // Terms kept by the new version are overwritten in place rather than removed and added again.
+    void update(long document, List<String> oldTokens, List<String> newTokens) {
+        if (oldTokens != null) {
+            for (int i = 0; i < oldTokens.size(); i++) {
+                String term = oldTokens.get(i);
+                if (frequency(oldTokens, i) > 0 && (newTokens == null || !newTokens.contains(term))) {
+                    remove(term, document);
+                }
+            }
+            documents.decrement();
+            totalLength.add(-oldTokens.size());
+        }
+        if (newTokens != null) {
+            add(document, newTokens);
+        }
+    }
+
+    // Replaces the whole index with the given documents, which must come in increasing id order, so every
+    // posting is appended. Used after a snapshot load, where one update per document from the loader threads
+    // would contend on the stripe locks. Holds every stripe, so it must not run alongside updates.
+    <T> void rebuild(Iterable<T> source, ToLongFunction<T> idOf, Function<T, List<String>> tokenizer) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.writeLock().lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.terms.clear();
+            }
+            documents.reset();
+            totalLength.reset();
+            for (T document : source) {
+                add(idOf.applyAsLong(document), tokenizer.apply(document));
+            }
+        } finally {
+            for (Stripe stripe : stripes) {
+                stripe.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Stripe stripe(String term) {
+        int hash = term.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private void add(long document, List<String> tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            int frequency = frequency(tokens, i);
+            if (frequency > 0) {
+                Stripe stripe = stripe(tokens.get(i));
+                // Reentrant, so rebuild can call this while holding every stripe
+                stripe.lock.writeLock().lock();
+                try {
+                    stripe.terms.computeIfAbsent(tokens.get(i), term -> new Postings())
+                            .put(document, frequency, tokens.size());
+                } finally {
+                    stripe.lock.writeLock().unlock();
+                }
+            }
+        }
+        documents.increment();
+        totalLength.add(tokens.size());
+    }
+
+    private void remove(String term, long document) {
+        Stripe stripe = stripe(term);
+        stripe.lock.writeLock().lock();
+        try {
+            Postings postings = stripe.terms.get(term);
+            if (postings != null) {
+                postings.remove(document);
+                if (postings.size == 0) {
+                    stripe.terms.remove(term);
+                }
+            }
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    // Occurrences of tokens[i] in the list, or 0 if it already occurred before i. Quadratic, but indexed texts
+    // are titles and names of a few words, and it avoids a map per document.
+    private static int frequency(List<String> tokens, int i) {
+        String token = tokens.get(i);
+        for (int j = 0; j < i; j++) {
+            if (tokens.get(j).equals(token)) {
+                return 0;
+            }
+        }
+        int frequency = 1;
+        for (int j = i + 1; j < tokens.size(); j++) {
+            if (tokens.get(j).equals(token)) {
+                frequency++;
+            }
+        }
+        return frequency;
+    }
+
+    // Reports weight * BM25 score of every document matching the query, once per matching query term.
+    // The last query token also matches every term it is a prefix of, for search-as-you-type.
+    void score(List<String> query, double weight, ScoreSink sink) {
+        long documentCount = documents.sum();
+        if (documentCount <= 0) {
+            return;
+        }
+        double averageLength = Math.max(1.0, (double) totalLength.sum() / documentCount);
+        for (int q = 0; q < query.size(); q++) {
+            String token = query.get(q);
+            if (q < query.size() - 1) {
+                score(token, documentCount, averageLength, weight, sink);
+                continue;
+            }
+            for (String term : prefixTerms(token)) {
+                score(term, documentCount, averageLength, weight, sink);
+            }
+        }
+    }
+
+    // The first MAX_PREFIX_TERMS terms starting with the prefix, in term order across all stripes
+    private List<String> prefixTerms(String prefix) {
+        List<String> matches = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                int taken = 0;
+                for (String term : stripe.terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+                    if (taken++ == MAX_PREFIX_TERMS) {
+                        break;
+                    }
+                    matches.add(term);
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        Collections.sort(matches);
+        return matches.size() > MAX_PREFIX_TERMS ? matches.subList(0, MAX_PREFIX_TERMS) : matches;
+    }
+
+    private void score(String term, long documentCount, double averageLength, double weight, ScoreSink sink) {
+        Stripe stripe = stripe(term);
+        stripe.lock.readLock().lock();
+        try {
+            Postings postings = stripe.terms.get(term);
+            if (postings != null) {
+                score(postings, documentCount, averageLength, weight, sink);
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    private void score(Postings postings, long documents, double averageLength, double weight, ScoreSink sink) {
+        double idf = Math.log(1 + (documents - postings.size + 0.5) / (postings.size + 0.5));
+        for (int i = 0; i < postings.size; i++) {
+            double frequency = postings.frequency(i);
+            double norm = K1 * (1 - B + B * postings.length(i) / averageLength);
+            sink.add(postings.document(i), weight * idf * frequency * (K1 + 1) / (frequency + norm));
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.bookstore.api.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+// Append-only log of DataStore mutations in memory-mapped segment files (wal-<index>.log).
+// Callers only enqueue records; a single writer thread copies them into the mapped segment and forces
+// the segment according to the FsyncPolicy, so concurrent appends are group-committed.
+//
+// Record layout: int payload length, int CRC32 of (sequence + payload), long sequence, payload.
+// A zero length or a bad checksum marks the end of the valid records in a segment.
+final class WriteAheadLog implements Closeable {
+    static final int HEADER_BYTES = 16;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final long fsyncIntervalNanos;
+    private final int segmentBytes;
+
+    // Last sequence number handed out
+    private final AtomicLong sequence;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Writer thread state
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final List<Entry> unforced = new ArrayList<>();
+    private long lastForceNanos;
+    private final CRC32 crc = new CRC32();
+
+    private static final class Entry {
+        final long sequence;
+        final byte[] payload;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        // Set by the writer on a ROLL entry before it completes
+        long rolledToSegment;
+
+        // ROLL and CLOSE are control entries with no payload
+        final int kind;
+        static final int RECORD = 0;
+        static final int ROLL = 1;
+        static final int CLOSE = 2;
+
+        Entry(long sequence, byte[] payload, int kind) {
+            this.sequence = sequence;
+            this.payload = payload;
+            this.kind = kind;
+        }
+    }
+
+    // Result of scanning existing segments at startup
+    static final class Recovery {
+        final long lastSequence;
+        final long nextSegmentIndex;
+        final long replayed;
+
+        Recovery(long lastSequence, long nextSegmentIndex, long replayed) {
+            this.lastSequence = lastSequence;
+            this.nextSegmentIndex = nextSegmentIndex;
+            this.replayed = replayed;
+        }
+    }
+
+    WriteAheadLog(PersistenceConfig config, long lastSequence, long firstSegmentIndex) {
+        this.directory = config.getDataDirectory();
+        this.policy = config.getFsyncPolicy();
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFsyncIntervalMillis());
+        this.segmentBytes = config.getSegmentBytes();
+        this.sequence = new AtomicLong(lastSequence);
+        this.queue = new LinkedBlockingQueue<>();
+        this.segmentIndex = firstSegmentIndex;
+
+        try {
+            openSegment(segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open write-ahead log in " + directory, e);
+        }
+        this.lastForceNanos = System.nanoTime();
+        this.writer = new Thread(this::run, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Enqueues a record; the future completes once the record is durable under the configured policy.
+    // A log closed by a write failure fails the future instead of throwing, so a mutation already applied in memory
+    // is never left half-indexed; callers check isClosed() before they start mutating.
+    CompletableFuture<Void> append(byte[] payload) {
+        if (closed) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Write-ahead log is closed"));
+            return failed;
+        }
+        Entry entry = new Entry(sequence.incrementAndGet(), payload, Entry.RECORD);
+        enqueue(entry);
+        return entry.done;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    long lastSequence() {
+        return sequence.get();
+    }
+
+    FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    // Forces everything appended so far and starts a new segment.
+    // The future completes with the new segment's index, so every older segment holds only earlier records.
+    CompletableFuture<Long> rollover() {
+        Entry entry = new Entry(0, null, Entry.ROLL);
+        enqueue(entry);
+        return entry.done.thenApply(ignored -> entry.rolledToSegment);
+    }
+
+    // Deletes segments that lie entirely before the given segment index
+    void deleteSegmentsBefore(long index) throws IOException {
+        for (Path segment : listSegments(directory)) {
+            if (segmentIndexOf(segment) < index) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Entry entry = new Entry(0, null, Entry.CLOSE);
+        queue.add(entry);
+        entry.done.join();
+    }
+
+    // The writer may fail, or close, between a caller's check of closed and its add; the entry would then sit
+    // behind a writer that has already drained the queue for the last time. closed is set before that final drain,
+    // so re-checking it after the add catches the entry, and whichever of the two removes it fails it.
+    private void enqueue(Entry entry) {
+        queue.add(entry);
+        if (closed && queue.remove(entry)) {
+            entry.done.completeExceptionally(new IllegalStateException("Write-ahead log is closed"));
+        }
+    }
+
+    // Replays every valid record with a sequence above afterSequence, in log order, passing each its sequence
+    static Recovery replay(Path directory, long afterSequence, ObjLongConsumer<ByteBuffer> consumer) throws IOException {
+        long lastSequence = afterSequence;
+        long lastIndex = 0;
+        long replayed = 0;
+        CRC32 crc = new CRC32();
+        for (Path segment : listSegments(directory)) {
+            lastIndex = Math.max(lastIndex, segmentIndexOf(segment));
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining() - 8) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(buffer.duplicate().position(start + 8).limit(start + HEADER_BYTES + length));
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    long recordSequence = buffer.getLong();
+                    ByteBuffer payload = buffer.slice();
+                    payload.limit(length);
+                    buffer.position(start + HEADER_BYTES + length);
+                    if (recordSequence > afterSequence) {
+                        consumer.accept(payload, recordSequence);
+                        replayed++;
+                    }
+                    lastSequence = Math.max(lastSequence, recordSequence);
+                }
+            }
+        }
+        return new Recovery(lastSequence, lastIndex + 1, replayed);
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        long pollNanos = (policy == FsyncPolicy.BATCHED) ? fsyncIntervalNanos : TimeUnit.MILLISECONDS.toNanos(100);
+        try {
+            while (true) {
+                Entry first = queue.poll(pollNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+                boolean closing = false;
+                for (Entry entry : batch) {
+                    if (entry.kind == Entry.RECORD) {
+                        write(entry);
+                    } else if (entry.kind == Entry.ROLL) {
+                        forceAndComplete();
+                        segmentIndex++;
+                        openSegment(segmentBytes);
+                        entry.rolledToSegment = segmentIndex;
+                        entry.done.complete(null);
+                    } else {
+                        closing = true;
+                        forceAndComplete();
+                        channel.close();
+                        entry.done.complete(null);
+                    }
+                }
+                batch.clear();
+                if (closing) {
+                    failQueued(new IllegalStateException("Write-ahead log is closed"));
+                    return;
+                }
+                completeWrites();
+            }
+        } catch (Throwable t) {
+            failAll(t, batch);
+        }
+    }
+
+    // Applies the fsync policy to the records written since the last force
+    private void completeWrites() throws IOException {
+        if (unforced.isEmpty()) {
+            return;
+        }
+        switch (policy) {
+            case PER_WRITE:
+                forceAndComplete();
+                break;
+            case BATCHED:
+                if (System.nanoTime() - lastForceNanos >= fsyncIntervalNanos) {
+                    forceAndComplete();
+                }
+                break;
+            default:
+                for (Entry entry : unforced) {
+                    entry.done.complete(null);
+                }
+                unforced.clear();
+        }
+    }
+
+    private void forceAndComplete() {
+        if (policy != FsyncPolicy.OS_MANAGED && buffer != null) {
+            buffer.force();
+        }
+        lastForceNanos = System.nanoTime();
+        for (Entry entry : unforced) {
+            entry.done.complete(null);
+        }
+        unforced.clear();
+    }
+
+    private void write(Entry entry) throws IOException {
+        int needed = HEADER_BYTES + entry.payload.length;
+        if (buffer.remaining() < needed) {
+            // Records are never split; an oversized record gets a segment of its own size
+            forceAndComplete();
+            segmentIndex++;
+            openSegment(Math.max(segmentBytes, needed));
+        }
+        int start = buffer.position();
+        buffer.putInt(entry.payload.length);
+        buffer.putInt(0);
+        buffer.putLong(entry.sequence);
+        buffer.put(entry.payload);
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + 8).limit(start + needed));
+        buffer.putInt(start + 4, (int) crc.getValue());
+        unforced.add(entry);
+    }
+
+    private void openSegment(int size) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Files.createDirectories(directory);
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void failAll(Throwable cause, List<Entry> batch) {
+        closed = true;
+        for (Entry entry : unforced) {
+            entry.done.completeExceptionally(cause);
+        }
+        for (Entry entry : batch) {
+            entry.done.completeExceptionally(cause);
+        }
+        failQueued(cause);
+    }
+
+    // Runs after closed is set, so enqueue() fails anything added later itself
+    private void failQueued(Throwable cause) {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            entry.done.completeExceptionally(cause);
+        }
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long segmentIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
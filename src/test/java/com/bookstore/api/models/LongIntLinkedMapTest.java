@@ -0,0 +1,138 @@
+package com.bookstore.api.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Insertion order through updates, removals, reinserts and compaction, and lookups across colliding probe chains
+public class LongIntLinkedMapTest {
+    private final LongIntLinkedMap map = new LongIntLinkedMap();
+
+    @Test
+    public void updatesKeepTheirPlaceAndReinsertsGoLast() {
+        map.put(10, 1);
+        map.put(20, 2);
+        map.put(30, 3);
+        assertEquals(2, map.put(20, 22));
+        assertEquals(4, map.addTo(10, 3));
+        assertEquals(Arrays.asList("10=4", "20=22", "30=3"), entries());
+
+        assertEquals(4, map.remove(10));
+        assertEquals(0, map.remove(10));
+        assertEquals(0, map.replace(10, 9));
+        assertFalse(map.containsKey(10));
+        map.put(10, 5);
+        assertEquals(Arrays.asList("20=22", "30=3", "10=5"), entries());
+        assertEquals(3, map.size());
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(20, -1));
+        map.addTo(30, 7);
+        assertEquals(Arrays.asList("30=7"), entries());
+    }
+
+    @Test
+    public void compactionKeepsTheOrderOfWhatIsLeft() {
+        for (long key = 1; key <= 100; key++) {
+            map.put(key, (int) key);
+        }
+        // Removing most of the entries compacts them several times over
+        for (long key = 1; key <= 100; key++) {
+            if (key % 10 != 0) {
+                map.remove(key);
+            }
+        }
+        assertTrue(map.end() < 100);
+        assertEquals(Arrays.asList("10=10", "20=20", "30=30", "40=40", "50=50", "60=60", "70=70", "80=80", "90=90",
+                "100=100"), entries());
+        for (long key = 1; key <= 100; key++) {
+            assertEquals(key % 10 == 0, map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void removalInsideACollidingChainKeepsTheRestFindable() {
+        // Keys whose home slot in the initial 16-slot table is the same, so they form one probe chain
+        List<Long> chain = new ArrayList<>();
+        for (long key = 1; chain.size() < 6; key++) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            if (((int) (h ^ (h >>> 32)) & 15) == 3) {
+                chain.add(key);
+            }
+        }
+        for (long key : chain) {
+            map.put(key, (int) key);
+        }
+
+        map.remove(chain.get(1));
+        map.remove(chain.get(3));
+        for (int i = 0; i < chain.size(); i++) {
+            long key = chain.get(i);
+            assertEquals(i == 1 || i == 3 ? -1 : (int) key, map.get(key, -1));
+        }
+        map.put(chain.get(1), 1);
+        assertEquals(1, map.get(chain.get(1), -1));
+        assertEquals(5, map.size());
+    }
+
+    @Test
+    public void randomOperationsMatchALinkedHashMap() {
+        Random random = new Random(11);
+        Map<Long, Integer> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(300) - 150;
+            int value = random.nextInt(1_000);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    // Like LinkedHashMap, an update keeps the key's place
+                    Integer previous = expected.put(key, value);
+                    assertEquals(previous == null ? 0 : previous, map.put(key, value));
+                    break;
+                case 2:
+                    assertEquals(expected.merge(key, value, Integer::sum).intValue(), map.addTo(key, value));
+                    break;
+                case 3:
+                    Integer removed = expected.remove(key);
+                    assertEquals(removed == null ? 0 : removed, map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.getOrDefault(key, -1).intValue(), map.get(key, -1));
+            }
+            if (i % 1_000 == 0) {
+                assertEquals(describe(expected), entries());
+            }
+        }
+        assertEquals(describe(expected), entries());
+        assertEquals(expected.size(), map.size());
+    }
+
+    // Live entries in iteration order, as key=value
+    private List<String> entries() {
+        List<String> entries = new ArrayList<>();
+        for (int position = 0; position < map.end(); position++) {
+            if (map.isLive(position)) {
+                entries.add(map.keyAt(position) + "=" + map.valueAt(position));
+            }
+        }
+        return entries;
+    }
+
+    private static List<String> describe(Map<Long, Integer> expected) {
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        return entries;
+    }
+}
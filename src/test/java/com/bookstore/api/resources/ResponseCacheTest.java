@@ -0,0 +1,156 @@
+package com.bookstore.api.resources;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Hits and misses by version stamp, eviction within the byte budget, hot entries outliving a scan, and the byte
+// accounting under concurrent hits and writes
+public class ResponseCacheTest {
+    private static final int THREADS = 4;
+    // Every body below encodes to the same length, so an entry's size is known
+    private static final int ENTRY_BYTES = body(0).length() + 2 + 160;
+    // Room for 10 entries in each of the 16 stripes
+    private static final long MAX_BYTES = 16 * 10 * ENTRY_BYTES;
+
+    private final ResponseCache cache = new ResponseCache("test", MAX_BYTES);
+    private final AtomicInteger encoded = new AtomicInteger();
+
+    @Test
+    public void anotherVersionMissesAndReplacesTheEntry() {
+        PreEncodedJson first = get(1, 1);
+        assertSame(first, get(1, 1));
+        assertEquals(1, encoded.get());
+        assertEquals("\"" + body(1) + "\"", new String(first.bytes(), StandardCharsets.UTF_8));
+
+        PreEncodedJson second = get(1, 2);
+        assertNotSame(first, second);
+        assertEquals(2, encoded.get());
+        assertSame(second, get(1, 2));
+
+        // The older stamp does not come back either
+        get(1, 1);
+        assertEquals(3, encoded.get());
+        assertEquals(1, cache.entries());
+        assertEquals(ENTRY_BYTES, cache.bytes());
+    }
+
+    @Test
+    public void responsesTooLargeForTheirStripeAreNotCached() {
+        StringBuilder large = new StringBuilder();
+        while (large.length() < MAX_BYTES / 16 / 8) {
+            large.append("0123456789");
+        }
+        String body = large.toString();
+        cache.get(1, 1, () -> {
+            encoded.incrementAndGet();
+            return body;
+        });
+        cache.get(1, 1, () -> {
+            encoded.incrementAndGet();
+            return body;
+        });
+
+        assertEquals(2, encoded.get());
+        assertEquals(0, cache.entries());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void evictionKeepsTheCacheWithinItsBudget() {
+        for (long id = 1; id <= 1_000; id++) {
+            get(id, 1);
+        }
+
+        assertTrue(cache.bytes() <= MAX_BYTES);
+        assertEquals(cache.entries() * (long) ENTRY_BYTES, cache.bytes());
+        assertEquals(1_000, cache.entries() + cache.evictions());
+        assertTrue(cache.evictions() >= 1_000 - 16 * 10);
+    }
+
+    @Test
+    public void entriesHitAgainOutliveAScanOfOneOffEntries() {
+        for (long id = 1; id <= 8; id++) {
+            get(id, 1);
+            get(id, 1);
+        }
+        // Each a miss that would push out the oldest entries if hits did not protect them
+        for (long id = 1_000; id < 5_000; id++) {
+            get(id, 1);
+        }
+
+        int before = encoded.get();
+        for (long id = 1; id <= 8; id++) {
+            get(id, 1);
+        }
+        assertEquals(before, encoded.get());
+    }
+
+    @Test
+    public void concurrentHitsAndWritesKeepTheAccounting() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < 50_000; i++) {
+                // Hot ids shared by every thread, with now and then a new version or an id no other thread uses
+                long id = i % 10 == 0 ? 1_000 + thread * 100_000 + i : i % 32;
+                get(id, i % 1_000 == 0 ? i : 0);
+            }
+        });
+
+        assertTrue(cache.bytes() <= MAX_BYTES);
+        assertEquals(cache.entries() * (long) ENTRY_BYTES, cache.bytes());
+    }
+
+    private PreEncodedJson get(long id, long version) {
+        return cache.get(id, version, () -> {
+            encoded.incrementAndGet();
+            return body(id);
+        });
+    }
+
+    private static String body(long id) {
+        return String.format("book-%012d", id);
+    }
+
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+
+    // Runs work on THREADS threads released together and rethrows the first failure
+    private static void runConcurrently(Work work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    work.run(thread);
+                    return null;
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
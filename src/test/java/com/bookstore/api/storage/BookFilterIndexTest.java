@@ -0,0 +1,155 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.BookFacets;
+import com.bookstore.api.models.BookFilter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// find() against a plain scan of the books, through every way it can pick its candidates, and facets leaving
+// out their own dimension's filter
+public class BookFilterIndexTest {
+    private final BookFilterIndex index = new BookFilterIndex();
+    private final Map<Long, Book> books = new HashMap<>();
+
+    @Test
+    public void findMatchesAScanForEveryKindOfFilter() {
+        Random random = new Random(42);
+        for (long id = 1; id <= 5_000; id++) {
+            put(new Book(id, "Book " + id, 1 + random.nextInt(50), null, 1950 + random.nextInt(70),
+                    random.nextInt(10_000) / 100.0, random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(5)));
+        }
+        // Replaced and removed books must drop out of their old ranges
+        for (long id = 1; id <= 5_000; id += 7) {
+            Book previous = books.get(id);
+            Book book = new Book(id, previous.getTitle(), previous.getAuthorId(), null,
+                    previous.getPublicationYear() + 1, previous.getPrice() + 5, previous.getStock());
+            index.update(previous, book);
+            books.put(id, book);
+        }
+        for (long id = 3; id <= 5_000; id += 11) {
+            index.update(books.remove(id), null);
+        }
+
+        List<BookFilter> filters = new ArrayList<>();
+        filters.add(filter(null, null, null, null, null, 7L));            // one author
+        filters.add(filter(null, null, 1990, 1990, null, null));          // one year
+        filters.add(filter(12.0, 12.5, null, null, null, null));          // narrow price range
+        filters.add(filter(0.0, 90.0, null, null, null, null));           // broad price range
+        filters.add(filter(10.0, 60.0, 1960, 2000, true, null));          // several dimensions
+        filters.add(filter(null, 50.0, null, null, false, 3L));
+        filters.add(filter(null, null, null, null, true, null));          // stock only
+        filters.add(filter(null, null, null, null, false, null));
+        filters.add(filter(null, null, 2100, null, null, null));          // nothing matches
+        filters.add(filter(20.0, 10.0, null, null, null, null));          // empty range
+        filters.add(filter(null, null, null, null, null, 1L << 40));     // author id out of range
+
+        for (BookFilter filter : filters) {
+            for (int limit : new int[] {1, 10, 1_000, 10_000}) {
+                assertPages(filter, limit);
+            }
+        }
+    }
+
+    @Test
+    public void facetsIgnoreTheirOwnDimensionsFilter() {
+        put(new Book(1, "A", 1, null, 1991, 5.00, 1));
+        put(new Book(2, "B", 1, null, 1995, 15.00, 0));
+        put(new Book(3, "C", 1, null, 2003, 15.50, 2));
+        put(new Book(4, "D", 2, null, 1999, 12.00, 3));
+        put(new Book(5, "E", 2, null, 2011, 45.00, 0));
+        put(new Book(6, "F", 3, null, 2012, 150.00, 1));
+
+        BookFacets facets = index.facets(filter(10.0, 20.0, null, null, null, 1L));
+
+        assertEquals(2, facets.getTotal());
+        // Author 1's books in every price range
+        assertEquals("0-10=1 10-20=2 20-50=0 50-100=0 100+=0", counts(facets.getPrice()));
+        // Books between 10 and 20 by every author
+        assertEquals("1=2 2=1", counts(facets.getAuthorId()));
+        // Both filters apply to the dimensions without one
+        assertEquals("1990-1999=1 2000-2009=1", counts(facets.getPublicationYear()));
+        assertEquals("true=1 false=1", counts(facets.getInStock()));
+
+        facets = index.facets(filter(null, null, null, null, false, null));
+        assertEquals(2, facets.getTotal());
+        assertEquals("true=4 false=2", counts(facets.getInStock()));
+        assertEquals("1=1 2=1", counts(facets.getAuthorId()));
+    }
+
+    @Test
+    public void stockChangesMoveBooksBetweenStockFilters() {
+        Book book = new Book(1, "A", 1, null, 2000, 10.0, 1);
+        put(book);
+        assertArrayEquals(new long[] {1}, index.find(filter(null, null, null, null, true, null), 0, 10));
+
+        book.setStock(0);
+        index.updateStock(book);
+        assertArrayEquals(new long[0], index.find(filter(null, null, null, null, true, null), 0, 10));
+        assertArrayEquals(new long[] {1}, index.find(filter(null, null, null, null, false, null), 0, 10));
+    }
+
+    // Walks every page of the filter and compares it with the scan
+    private void assertPages(BookFilter filter, int limit) {
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 5_000; id++) {
+            Book book = books.get(id);
+            if (book != null && matches(filter, book)) {
+                expected.add(id);
+            }
+        }
+        List<Long> found = new ArrayList<>();
+        long after = 0;
+        while (true) {
+            long[] page = index.find(filter, after, limit);
+            for (long id : page) {
+                found.add(id);
+            }
+            if (page.length < limit) {
+                break;
+            }
+            after = page[page.length - 1];
+        }
+        assertEquals(describe(filter) + " limit " + limit, expected, found);
+    }
+
+    private static boolean matches(BookFilter filter, Book book) {
+        long cents = Math.round(book.getPrice() * 100);
+        return (filter.getMinPrice() == null || cents >= Math.round(filter.getMinPrice() * 100))
+                && (filter.getMaxPrice() == null || cents <= Math.round(filter.getMaxPrice() * 100))
+                && (filter.getYearFrom() == null || book.getPublicationYear() >= filter.getYearFrom())
+                && (filter.getYearTo() == null || book.getPublicationYear() <= filter.getYearTo())
+                && (filter.getInStock() == null || (book.getStock() > 0) == filter.getInStock())
+                && (filter.getAuthorId() == null || book.getAuthorId() == filter.getAuthorId());
+    }
+
+    private void put(Book book) {
+        index.update(books.put(book.getId(), book), book);
+    }
+
+    private static BookFilter filter(Double minPrice, Double maxPrice, Integer yearFrom, Integer yearTo,
+                                     Boolean inStock, Long authorId) {
+        return new BookFilter(minPrice, maxPrice, yearFrom, yearTo, inStock, authorId);
+    }
+
+    private static String describe(BookFilter filter) {
+        return "price " + filter.getMinPrice() + ".." + filter.getMaxPrice() + ", year " + filter.getYearFrom()
+                + ".." + filter.getYearTo() + ", inStock " + filter.getInStock() + ", author " + filter.getAuthorId();
+    }
+
+    private static String counts(List<BookFacets.FacetCount> facets) {
+        StringBuilder text = new StringBuilder();
+        for (BookFacets.FacetCount facet : facets) {
+            text.append(text.length() == 0 ? "" : " ").append(facet.getValue()).append('=').append(facet.getCount());
+        }
+        return text.toString();
+    }
+}
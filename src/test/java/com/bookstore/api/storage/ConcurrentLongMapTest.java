@@ -0,0 +1,210 @@
+package com.bookstore.api.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+// Tombstones, rebuilds under concurrent readers and iterators, key 0 and concurrent computes
+public class ConcurrentLongMapTest {
+    private static final int THREADS = 4;
+
+    private final ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+
+    @Test
+    public void keyZeroIsKeptLikeAnyOtherKey() {
+        map.put(0, 10L);
+        map.put(1, 11L);
+
+        assertEquals(Long.valueOf(10), map.get(0));
+        assertEquals(2, map.size());
+        assertEquals(21, map.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(Long.valueOf(12), map.compute(0, (key, value) -> value + 2));
+
+        assertEquals(Long.valueOf(12), map.remove(0));
+        assertNull(map.get(0));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removedKeyCanBeStoredAgain() {
+        map.put(42, 1L);
+        map.remove(42);
+        assertNull(map.get(42));
+        assertNull(map.computeIfPresent(42, (key, value) -> value + 1));
+        assertEquals(0, map.size());
+
+        map.put(42, 2L);
+        assertEquals(Long.valueOf(2), map.get(42));
+        assertEquals(1, map.size());
+        assertEquals(1, map.values().size());
+    }
+
+    @Test
+    public void removedSlotsAreDroppedWhenTheTableIsRebuilt() {
+        // Each new key takes a fresh slot while removed ones keep theirs, so only rebuilds keep this going
+        for (long key = 1; key <= 100_000; key++) {
+            map.put(key, key);
+            if (key > 3) {
+                assertEquals(Long.valueOf(key - 3), map.remove(key - 3));
+            }
+        }
+
+        assertEquals(3, map.size());
+        for (long key = 99_998; key <= 100_000; key++) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+        assertNull(map.get(1));
+        List<Long> values = new ArrayList<>(map.values());
+        values.sort(null);
+        assertEquals(List.of(99_998L, 99_999L, 100_000L), values);
+    }
+
+    @Test
+    public void readersFindStableKeysWhileTablesAreRebuilt() throws Exception {
+        for (long key = -1; key >= -1_000; key--) {
+            map.put(key, key * 10);
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            if (thread == 0) {
+                // Grows every segment through many rebuilds, and leaves removed slots behind as well
+                for (long key = 1; key <= 200_000; key++) {
+                    map.put(key, key);
+                    if (key % 3 == 0) {
+                        map.remove(key - 1);
+                    }
+                }
+                writing.set(false);
+                return;
+            }
+            do {
+                for (long key = -1; key >= -1_000; key--) {
+                    Long value = map.get(key);
+                    if (value == null || value != key * 10) {
+                        misses.incrementAndGet();
+                    }
+                }
+            } while (writing.get());
+        });
+
+        assertEquals(0, misses.get());
+        assertEquals(1_000 + 200_000 - 200_000 / 3, map.size());
+    }
+
+    @Test
+    public void iterationSeesEveryEntryOnceWhileTablesAreRebuilt() {
+        for (long key = 1; key <= 1_000; key++) {
+            map.put(key, key);
+        }
+
+        Map<Long, Integer> seen = new HashMap<>();
+        long next = 1_001;
+        for (Iterator<Long> values = map.values().iterator(); values.hasNext(); ) {
+            seen.merge(values.next(), 1, Integer::sum);
+            // Enough inserts between two steps to rebuild the tables the iterator is walking and those ahead; the
+            // iterator finds some of the new entries too, so the inserts stop at some point
+            for (int i = 0; i < 50 && next <= 100_000; i++) {
+                map.put(next, next);
+                next++;
+            }
+        }
+
+        for (long key = 1; key <= 1_000; key++) {
+            assertEquals("Entry " + key, Integer.valueOf(1), seen.get(key));
+        }
+        for (Map.Entry<Long, Integer> entry : seen.entrySet()) {
+            assertEquals("Entry " + entry.getKey(), Integer.valueOf(1), entry.getValue());
+        }
+    }
+
+    @Test
+    public void concurrentComputesLoseNoUpdates() throws Exception {
+        int keys = 64;
+        int perThread = 20_000;
+        AtomicInteger created = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < perThread; i++) {
+                long key = i % keys;
+                map.computeIfAbsent(key + keys, k -> {
+                    created.incrementAndGet();
+                    return 0L;
+                });
+                map.compute(key, (k, value) -> value == null ? 1 : value + 1);
+            }
+        });
+
+        long total = 0;
+        for (long key = 0; key < keys; key++) {
+            total += map.get(key);
+        }
+        assertEquals((long) THREADS * perThread, total);
+        assertEquals(keys, created.get());
+        assertEquals(2 * keys, map.size());
+    }
+
+    @Test
+    public void writingTheMapFromInsideComputeIsRejected() {
+        boolean assertions = false;
+        assert assertions = true;
+        assumeTrue(assertions);
+
+        try {
+            map.compute(1, (key, value) -> map.put(2, 2L));
+            fail("Nested write was accepted");
+        } catch (AssertionError expected) {
+            // The outer compute's lock is released again
+            map.put(3, 3L);
+            assertEquals(Long.valueOf(3), map.get(3));
+        }
+    }
+
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+
+    // Runs work on THREADS threads released together and rethrows the first failure
+    private static void runConcurrently(Work work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    work.run(thread);
+                    return null;
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.exceptions.AuthorNotFoundException;
+import com.bookstore.api.exceptions.OutOfStockException;
+import com.bookstore.api.models.Author;
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.Customer;
+import com.bookstore.api.models.Order;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+// Concurrent writers on the shared DataStore: no lost updates, no duplicate ids, no overselling. Each test works
+// on entities it creates itself, so the tests do not depend on each other or on the sample data.
+public class DataStoreConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+
+    private final DataStore dataStore = DataStore.getInstance();
+
+    @Test
+    public void concurrentCreatesGetUniqueIds() throws Exception {
+        long authorId = newAuthor();
+        Set<Long> bookIds = ConcurrentHashMap.newKeySet();
+        Set<Long> customerIds = ConcurrentHashMap.newKeySet();
+        runConcurrently(thread -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                bookIds.add(dataStore.createBook(book(authorId, "Unique " + thread + "-" + i, 1)).getId());
+                customerIds.add(dataStore.createCustomer(customer(thread + "-" + i)).getId());
+            }
+        });
+
+        assertEquals(THREADS * PER_THREAD, bookIds.size());
+        assertEquals(THREADS * PER_THREAD, customerIds.size());
+        for (long id : bookIds) {
+            assertEquals(id, dataStore.getBook(id).getId());
+        }
+    }
+
+    @Test
+    public void concurrentAddToCartLosesNoQuantity() throws Exception {
+        long authorId = newAuthor();
+        long bookId = dataStore.createBook(book(authorId, "Cart", 1)).getId();
+        long shared = dataStore.createCustomer(customer("shared")).getId();
+        long[] own = new long[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            own[i] = dataStore.createCustomer(customer("own-" + i)).getId();
+        }
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                dataStore.addToCart(shared, new CartItem(bookId, 1));
+                dataStore.addToCart(own[thread], new CartItem(bookId, 2));
+            }
+        });
+
+        assertEquals(THREADS * PER_THREAD, quantity(shared, bookId));
+        for (long customerId : own) {
+            assertEquals(2 * PER_THREAD, quantity(customerId, bookId));
+        }
+    }
+
+    @Test
+    public void concurrentCheckoutsNeverOversell() throws Exception {
+        int stock = THREADS * 10;
+        long authorId = newAuthor();
+        long bookId = dataStore.createBook(book(authorId, "Limited", stock)).getId();
+        long[][] customers = new long[THREADS][PER_THREAD / 10];
+        for (long[] perThread : customers) {
+            for (int i = 0; i < perThread.length; i++) {
+                perThread[i] = dataStore.createCustomer(customer("buyer")).getId();
+                dataStore.addToCart(perThread[i], new CartItem(bookId, 1));
+            }
+        }
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        runConcurrently(thread -> {
+            for (long customerId : customers[thread]) {
+                try {
+                    Order order = dataStore.createOrder(customerId);
+                    if (order != null) {
+                        sold.incrementAndGet();
+                    }
+                } catch (OutOfStockException e) {
+                    refused.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(stock, sold.get());
+        assertEquals(THREADS * customers[0].length - stock, refused.get());
+        assertEquals(0, dataStore.getBook(bookId).getStock());
+    }
+
+    @Test
+    public void bookIsNeverAddedToDeletedAuthor() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            long authorId = newAuthor();
+            long[] bookId = new long[1];
+            runConcurrently(thread -> {
+                if (thread == 0) {
+                    try {
+                        bookId[0] = dataStore.createBook(book(authorId, "Race", 1)).getId();
+                    } catch (AuthorNotFoundException e) {
+                        // Lost the race to the delete
+                    }
+                } else if (thread == 1) {
+                    dataStore.deleteAuthor(authorId);
+                }
+            });
+
+            if (bookId[0] != 0) {
+                assertTrue(dataStore.authorExists(authorId));
+                assertNotNull(dataStore.getBook(bookId[0]));
+            } else {
+                assertFalse(dataStore.authorExists(authorId));
+            }
+        }
+    }
+
+    private interface Work {
+        void run(int thread) throws Exception;
+    }
+
+    // Runs work on THREADS threads released together and rethrows the first failure
+    private static void runConcurrently(Work work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                Callable<Void> task = () -> {
+                    start.await();
+                    work.run(thread);
+                    return null;
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private int quantity(long customerId, long bookId) {
+        return dataStore.getCart(customerId).getItems().stream()
+                .filter(item -> item.getBookId() == bookId)
+                .mapToInt(CartItem::getQuantity)
+                .sum();
+    }
+
+    private long newAuthor() {
+        return dataStore.createAuthor(new Author(0, "Concurrency Author", "Writes in parallel")).getId();
+    }
+
+    private static Book book(long authorId, String title, int stock) {
+        return new Book(0, title, authorId, "978-0-00-000000-0", 2000, 10.0, stock);
+    }
+
+    private static Customer customer(String name) {
+        return new Customer(0, "Customer " + name, name + "@example.com", "password123");
+    }
+}
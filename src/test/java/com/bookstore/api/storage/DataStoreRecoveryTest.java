@@ -0,0 +1,227 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.Author;
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.Cart;
+import com.bookstore.api.models.CartItem;
+import com.bookstore.api.models.CartOperation;
+import com.bookstore.api.models.Customer;
+import com.bookstore.api.models.Order;
+import com.bookstore.api.models.OrderItem;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Restarts a store on its data directory and checks it comes back as it was. The first store is never closed,
+// as after a crash: closing would take a final snapshot and leave nothing for the log to replay.
+public class DataStoreRecoveryTest {
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<DataStore> restarted = new ArrayList<>();
+
+    @After
+    public void closeRestartedStores() throws IOException {
+        for (DataStore store : restarted) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void everyRecordTypeReplays() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        DataStore live = open(dir);
+
+        long authorId = live.createAuthor(new Author(0, "Replayed Author", "First biography")).getId();
+        live.updateAuthor(authorId, new Author(0, "Replayed Author", "Second biography"));
+        long goneAuthorId = live.createAuthor(new Author(0, "Gone Author", null)).getId();
+        live.deleteAuthor(goneAuthorId);
+
+        long bookId = live.createBook(new Book(0, "Draft Title", authorId, "978-1-11-111111-1", 2001, 12.5, 10)).getId();
+        live.updateBook(bookId, new Book(0, "Final Title", authorId, "978-1-11-111111-1", 2001, 15.0, 10));
+        long otherBookId = live.createBook(new Book(0, "Other", authorId, "978-2-22-222222-2", 2002, 5.0, 4)).getId();
+        long goneBookId = live.createBook(new Book(0, "Gone", authorId, "978-3-33-333333-3", 2003, 1.0, 1)).getId();
+        live.deleteBook(goneBookId);
+
+        long customerId = live.createCustomer(new Customer(0, "Buyer", "buyer@example.com", "password123")).getId();
+        long goneCustomerId = live.createCustomer(new Customer(0, "Leaver", "leaver@example.com", "password123")).getId();
+        live.deleteCustomer(goneCustomerId);
+
+        live.addToCart(customerId, new CartItem(bookId, 3));
+        live.updateCartItem(customerId, bookId, 2);
+        long orderId = live.createOrder(customerId).getId();
+        live.addToCart(customerId, new CartItem(otherBookId, 1));
+        live.removeFromCart(customerId, otherBookId);
+        live.addToCart(customerId, new CartItem(otherBookId, 1));
+        live.clearCart(customerId);
+        live.applyCartOperations(customerId, Collections.singletonList(
+                new CartOperation(CartOperation.Op.ADD, otherBookId, 4)));
+
+        Set<Byte> types = new TreeSet<>();
+        WriteAheadLog.replay(dir, 0, (record, sequence) -> types.add(record.get(0)));
+        for (byte type = Mutations.BOOK_PUT; type <= Mutations.CART_BATCH; type++) {
+            assertTrue("No record of type " + type + " in the log", types.contains(type));
+        }
+
+        DataStore recovered = restart(dir);
+        Author author = recovered.getAuthor(authorId);
+        assertEquals("Second biography", author.getBiography());
+        assertNull(recovered.getAuthor(goneAuthorId));
+
+        Book book = recovered.getBook(bookId);
+        assertEquals("Final Title", book.getTitle());
+        assertEquals(15.0, book.getPrice(), 0);
+        assertEquals(8, book.getStock());
+        assertEquals(4, recovered.getBook(otherBookId).getStock());
+        assertNull(recovered.getBook(goneBookId));
+
+        assertNotNull(recovered.getCustomer(customerId));
+        assertNull(recovered.getCustomer(goneCustomerId));
+        Cart cart = recovered.getCart(customerId);
+        assertEquals(1, cart.getItems().size());
+        assertEquals(otherBookId, cart.getItems().get(0).getBookId());
+        assertEquals(4, cart.getItems().get(0).getQuantity());
+
+        Order order = recovered.getOrder(customerId, orderId);
+        assertEquals(1, order.getItems().size());
+        assertEquals(2, order.getItems().get(0).getQuantity());
+        assertEquals(30.0, order.getTotalAmount(), 0);
+
+        // Ids of deleted entities are not handed out again
+        Customer next = recovered.createCustomer(new Customer(0, "Next", "next@example.com", "password123"));
+        assertTrue(next.getId() > goneCustomerId);
+    }
+
+    @Test
+    public void snapshotPlusLogTailRecovers() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        DataStore live = open(dir);
+        long authorId = live.createAuthor(new Author(0, "Snapshot Author", null)).getId();
+        long bookId = live.createBook(new Book(0, "Before", authorId, "978-4-44-444444-4", 2004, 9.0, 20)).getId();
+        long customerId = live.createCustomer(new Customer(0, "Tail", "tail@example.com", "password123")).getId();
+        live.addToCart(customerId, new CartItem(bookId, 5));
+        live.createOrder(customerId);
+
+        live.snapshot();
+
+        live.updateBook(bookId, new Book(0, "After", authorId, "978-4-44-444444-4", 2004, 9.0, 50));
+        live.addToCart(customerId, new CartItem(bookId, 7));
+        live.createOrder(customerId);
+        long lateBookId = live.createBook(new Book(0, "Late", authorId, "978-5-55-555555-5", 2005, 3.0, 1)).getId();
+
+        DataStore recovered = restart(dir);
+        Book book = recovered.getBook(bookId);
+        assertEquals("After", book.getTitle());
+        assertEquals(43, book.getStock());
+        assertNotNull(recovered.getBook(lateBookId));
+        assertEquals(2, recovered.getCustomerOrders(customerId).size());
+        assertTrue(recovered.getCart(customerId).isEmpty());
+    }
+
+    @Test
+    public void corruptLastRecordIsLostAndEverythingBeforeItKept() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        DataStore live = open(dir);
+        long authorId = live.createAuthor(new Author(0, "Torn Author", null)).getId();
+        long bookId = live.createBook(new Book(0, "Kept", authorId, "978-6-66-666666-6", 2006, 4.0, 3)).getId();
+        live.updateBook(bookId, new Book(0, "Lost", authorId, "978-6-66-666666-6", 2006, 4.0, 3));
+
+        // Flip a byte in the payload of the last record, as a write torn by the crash would leave it
+        Path segment = lastSegment(dir);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = lastRecordOffset(channel) + WriteAheadLog.HEADER_BYTES + 1;
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            channel.read(oneByte, position);
+            oneByte.put(0, (byte) ~oneByte.get(0)).rewind();
+            channel.write(oneByte, position);
+        }
+
+        DataStore recovered = restart(dir);
+        assertEquals("Kept", recovered.getBook(bookId).getTitle());
+        assertNotNull(recovered.getAuthor(authorId));
+    }
+
+    @Test
+    public void replayedOrderKeepsStockSetByALaterBookPut() {
+        DataStore store = new DataStore(new PersistenceConfig(null, FsyncPolicy.BATCHED, 10, SEGMENT_BYTES, 3600));
+        long authorId = store.createAuthor(new Author(0, "Ordering Author", null)).getId();
+        long customerId = store.createCustomer(new Customer(0, "Orderer", "o@example.com", "password123")).getId();
+        Book book = new Book(1_000_000, "Reordered", authorId, "978-7-77-777777-7", 2007, 2.0, 10);
+        Mutations.apply(store, ByteBuffer.wrap(Mutations.bookPut(book)), 5);
+
+        // Reserved before the put was logged: live, the put replaced the reserved stock
+        Mutations.apply(store, ByteBuffer.wrap(Mutations.orderCreate(order(1_000_001, customerId, book, 3),
+                new long[] {4})), 6);
+        assertEquals(10, store.getBook(book.getId()).getStock());
+
+        // Reserved after the put: taken from the stock the put set
+        Mutations.apply(store, ByteBuffer.wrap(Mutations.orderCreate(order(1_000_002, customerId, book, 3),
+                new long[] {5})), 7);
+        assertEquals(7, store.getBook(book.getId()).getStock());
+        assertFalse(store.getCustomerOrders(customerId).isEmpty());
+    }
+
+    private DataStore open(Path dir) {
+        PersistenceConfig config = new PersistenceConfig(dir, FsyncPolicy.PER_WRITE, 10, SEGMENT_BYTES, 3600);
+        return new DataStore(config);
+    }
+
+    private DataStore restart(Path dir) {
+        DataStore store = open(dir);
+        restarted.add(store);
+        return store;
+    }
+
+    private static Order order(long id, long customerId, Book book, int quantity) {
+        Order order = new Order(id, customerId);
+        order.addItem(new OrderItem(book.getId(), book.getTitle(), book.getPrice(), quantity));
+        order.calculateTotal();
+        return order;
+    }
+
+    private static Path lastSegment(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "wal-*.log")) {
+            stream.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments.get(segments.size() - 1);
+    }
+
+    // Walks the record headers to the start of the last record
+    private static long lastRecordOffset(FileChannel channel) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        long position = 0;
+        long last = -1;
+        while (true) {
+            length.clear();
+            if (channel.read(length, position) < 4 || length.getInt(0) <= 0) {
+                return last;
+            }
+            last = position;
+            position += WriteAheadLog.HEADER_BYTES + length.getInt(0);
+        }
+    }
+}
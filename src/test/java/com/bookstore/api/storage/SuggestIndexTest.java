@@ -0,0 +1,191 @@
+package com.bookstore.api.storage;
+
+import com.bookstore.api.models.Author;
+import com.bookstore.api.models.Book;
+import com.bookstore.api.models.Order;
+import com.bookstore.api.models.OrderItem;
+import com.bookstore.api.models.Suggestion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Prefix matches ranked by popularity after orders, authors counting their books' orders, updates and removals,
+// and suggest() against a plain scan when the completions span many chunks
+public class SuggestIndexTest {
+    private final SuggestIndex index = new SuggestIndex();
+    private long nextOrderId = 1;
+
+    @Test
+    public void prefixMatchesIgnoreCaseAndTieInTextOrder() {
+        index.putAuthor(new Author(1, "Harper Lee", null));
+        index.putBook(book(1, "harry's game", 1));
+        index.putBook(book(2, "Hard Times", 1));
+        index.putBook(book(3, "Dune", 1));
+
+        assertEquals(Arrays.asList("book:2", "author:1", "book:1"), describe(index.suggest("HAR", 10)));
+        assertEquals(Arrays.asList("book:2", "author:1"), describe(index.suggest("har", 2)));
+        assertEquals(Arrays.asList("book:3"), describe(index.suggest("dune", 10)));
+        assertTrue(index.suggest("x", 10).isEmpty());
+    }
+
+    @Test
+    public void recordedOrdersMoveBooksAndAuthorsUp() {
+        index.putAuthor(new Author(1, "Stephen King", null));
+        index.putAuthor(new Author(2, "Stephenie Meyer", null));
+        index.putBook(book(1, "Stand", 1));
+        index.putBook(book(2, "Star Maker", 2));
+        index.putBook(book(3, "Stardust", 2));
+
+        assertEquals(Arrays.asList("book:1", "book:2", "book:3"), describe(index.suggest("sta", 10)));
+
+        index.recordOrder(order(3));
+        index.recordOrder(order(3));
+        index.recordOrder(order(2));
+        assertEquals(Arrays.asList("book:3", "book:2", "book:1"), describe(index.suggest("sta", 10)));
+
+        // Stephenie Meyer has the orders of both her books
+        assertEquals(Arrays.asList("author:2", "author:1"), describe(index.suggest("steph", 10)));
+        index.recordOrder(order(1));
+        index.recordOrder(order(1));
+        index.recordOrder(order(1));
+        index.recordOrder(order(1));
+        assertEquals(Arrays.asList("author:1", "author:2"), describe(index.suggest("steph", 10)));
+    }
+
+    @Test
+    public void updatedBooksKeepTheirPopularityAndRemovedOnesDisappear() {
+        index.putAuthor(new Author(1, "Zadie Smith", null));
+        index.putAuthor(new Author(2, "Zora Neale Hurston", null));
+        index.putBook(book(1, "White Teeth", 1));
+        index.putBook(book(2, "Whiteout", 2));
+        index.recordOrder(order(1));
+        index.recordOrder(order(1));
+        index.recordOrder(order(2));
+
+        // A new title moves the book and its orders; a new author takes the book's orders along
+        index.putBook(book(1, "Zebra Crossing", 2));
+        assertEquals(Arrays.asList("book:2"), describe(index.suggest("whit", 10)));
+        assertEquals(Arrays.asList("author:2", "book:1", "author:1"), describe(index.suggest("z", 10)));
+
+        index.removeBook(1);
+        assertEquals(Arrays.asList("author:2", "author:1"), describe(index.suggest("z", 10)));
+
+        index.removeAuthor(2);
+        assertEquals(Arrays.asList("author:1"), describe(index.suggest("z", 10)));
+    }
+
+    @Test
+    public void suggestMatchesAScanAcrossManyChunks() {
+        Random random = new Random(7);
+        List<Book> books = new ArrayList<>();
+        List<Author> authors = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            authors.add(new Author(id, "Author " + (char) ('a' + random.nextInt(4)) + id, null));
+        }
+        for (long id = 1; id <= 5_000; id++) {
+            String title = "" + (char) ('a' + random.nextInt(4)) + (char) ('a' + random.nextInt(26)) + " " + id;
+            books.add(book(id, random.nextBoolean() ? title : title.toUpperCase(), 1 + random.nextInt(40)));
+        }
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            // Skewed, so a few books gather many orders and most none
+            long bookId = 1 + (long) (5_000 * Math.pow(random.nextDouble(), 4));
+            orders.add(order(bookId));
+        }
+
+        index.rebuild(books, authors, orders.subList(0, 1_500));
+        for (Order order : orders.subList(1_500, orders.size())) {
+            index.recordOrder(order);
+        }
+        SuggestIndex incremental = new SuggestIndex();
+        for (Author author : authors) {
+            incremental.putAuthor(author);
+        }
+        for (Book book : books) {
+            incremental.putBook(book);
+        }
+        for (Order order : orders) {
+            incremental.recordOrder(order);
+        }
+
+        for (String prefix : Arrays.asList("", "a", "B", "ca", "DZ", "author", "author c", "q")) {
+            for (int limit : new int[] {1, 5, 50}) {
+                List<String> expected = scan(books, authors, orders, prefix, limit);
+                assertEquals(prefix + " limit " + limit, expected, describe(index.suggest(prefix, limit)));
+                assertEquals(prefix + " limit " + limit, expected, describe(incremental.suggest(prefix, limit)));
+            }
+        }
+    }
+
+    // The best completions by popularity, then text ignoring case, books before authors, then id
+    private static List<String> scan(List<Book> books, List<Author> authors, List<Order> orders, String prefix,
+                                     int limit) {
+        Map<String, Long> popularity = new HashMap<>();
+        Map<Long, Long> authorOf = new HashMap<>();
+        for (Book book : books) {
+            authorOf.put(book.getId(), book.getAuthorId());
+        }
+        for (Order order : orders) {
+            for (OrderItem item : order.getItems()) {
+                popularity.merge("book:" + item.getBookId(), 1L, Long::sum);
+                popularity.merge("author:" + authorOf.get(item.getBookId()), 1L, Long::sum);
+            }
+        }
+
+        List<Suggestion> matches = new ArrayList<>();
+        for (Book book : books) {
+            if (book.getTitle().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                matches.add(new Suggestion("book", book.getId(), book.getTitle()));
+            }
+        }
+        for (Author author : authors) {
+            if (author.getName().regionMatches(true, 0, prefix, 0, prefix.length())) {
+                matches.add(new Suggestion("author", author.getId(), author.getName()));
+            }
+        }
+        matches.sort((a, b) -> {
+            int order = Long.compare(popularity.getOrDefault(key(b), 0L), popularity.getOrDefault(key(a), 0L));
+            if (order == 0) {
+                order = String.CASE_INSENSITIVE_ORDER.compare(a.getText(), b.getText());
+            }
+            if (order == 0) {
+                order = a.getType().equals(b.getType()) ? Long.compare(a.getId(), b.getId())
+                        : a.getType().equals("book") ? -1 : 1;
+            }
+            return order;
+        });
+        return describe(matches.subList(0, Math.min(limit, matches.size())));
+    }
+
+    private static String key(Suggestion suggestion) {
+        return suggestion.getType() + ":" + suggestion.getId();
+    }
+
+    private static List<String> describe(List<Suggestion> suggestions) {
+        List<String> keys = new ArrayList<>();
+        for (Suggestion suggestion : suggestions) {
+            keys.add(key(suggestion));
+        }
+        return keys;
+    }
+
+    private static Book book(long id, String title, long authorId) {
+        return new Book(id, title, authorId, null, 2000, 10.0, 1);
+    }
+
+    private Order order(long... bookIds) {
+        Order order = new Order(nextOrderId++, 1);
+        for (long bookId : bookIds) {
+            order.addItem(new OrderItem(bookId, "Book " + bookId, 10.0, 1));
+        }
+        return order;
+    }
+}
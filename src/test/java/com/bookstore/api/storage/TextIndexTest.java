@@ -0,0 +1,133 @@
+package com.bookstore.api.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// BM25 ranking, prefix matching of the last query word, and updates, removals and rebuilds of documents
+public class TextIndexTest {
+    private final TextIndex index = new TextIndex();
+
+    @Test
+    public void tokenizeLowercasesRunsOfLettersAndDigits() {
+        assertEquals(Arrays.asList("the", "lord", "of", "the", "rings", "2"),
+                TextIndex.tokenize("The Lord-of the RINGS, 2"));
+        assertTrue(TextIndex.tokenize("  --  ").isEmpty());
+        assertTrue(TextIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void documentsMatchingMoreAndRarerTermsRankFirst() {
+        add(1, "alpha beta");
+        add(2, "alpha gamma");
+        add(3, "alpha delta");
+        add(4, "beta epsilon");
+
+        // Both terms, then the rarer beta alone, then the common alpha alone
+        List<Long> ranked = rank("alpha beta");
+        assertEquals(Arrays.asList(1L, 4L), ranked.subList(0, 2));
+        assertEquals(4, ranked.size());
+    }
+
+    @Test
+    public void shorterDocumentRanksFirstForTheSameTerm() {
+        add(1, "dune messiah of the desert planet");
+        add(2, "dune");
+        add(3, "foundation");
+
+        assertEquals(Arrays.asList(2L, 1L), rank("dune"));
+    }
+
+    @Test
+    public void repeatedTermRanksFirstAtTheSameLength() {
+        add(1, "war and peace");
+        add(2, "war war peace");
+
+        assertEquals(Arrays.asList(2L, 1L), rank("war"));
+    }
+
+    @Test
+    public void onlyTheLastQueryWordMatchesAsAPrefix() {
+        add(1, "the hobbit");
+        add(2, "hobgoblin stories");
+        add(3, "short stories");
+
+        assertEquals(Arrays.asList(1L, 2L), sorted(rank("hob")));
+        // "hob" is not the last word, so it must match a whole term; "sto" matches stories
+        assertEquals(Arrays.asList(2L, 3L), sorted(rank("hob sto")));
+        assertEquals(Arrays.asList(2L, 3L), rank("hobgoblin sto"));
+    }
+
+    @Test
+    public void prefixExpandsToTheFirstTermsInOrder() {
+        for (int i = 0; i < 70; i++) {
+            add(i + 1, String.format("t%02d", i));
+        }
+
+        List<Long> matched = sorted(rank("t"));
+        assertEquals(64, matched.size());
+        assertEquals(Long.valueOf(1), matched.get(0));
+        assertEquals(Long.valueOf(64), matched.get(63));
+    }
+
+    @Test
+    public void updatesReplaceAndRemoveDocuments() {
+        add(1, "old title");
+        add(2, "another title");
+        index.update(1, TextIndex.tokenize("old title"), TextIndex.tokenize("new title"));
+
+        assertTrue(rank("old").isEmpty());
+        assertEquals(Arrays.asList(1L), rank("new"));
+        assertEquals(Arrays.asList(1L, 2L), sorted(rank("title")));
+
+        index.update(2, TextIndex.tokenize("another title"), null);
+        assertEquals(Arrays.asList(1L), rank("title"));
+        assertTrue(rank("another").isEmpty());
+    }
+
+    @Test
+    public void rebuildScoresLikeIncrementalUpdates() {
+        List<String> titles = Arrays.asList("red fish", "blue fish", "one fish two fish", "red herring");
+        for (int i = 0; i < titles.size(); i++) {
+            add(i + 1, titles.get(i));
+        }
+        TextIndex rebuilt = new TextIndex();
+        List<Long> ids = Arrays.asList(1L, 2L, 3L, 4L);
+        rebuilt.rebuild(ids, Long::longValue, id -> TextIndex.tokenize(titles.get((int) (id - 1))));
+
+        for (String query : Arrays.asList("fish", "red", "red fi", "two")) {
+            assertEquals(query, scores(index, query), scores(rebuilt, query));
+        }
+    }
+
+    private void add(long document, String text) {
+        index.update(document, null, TextIndex.tokenize(text));
+    }
+
+    private static Map<Long, Double> scores(TextIndex index, String query) {
+        Map<Long, Double> scores = new HashMap<>();
+        index.score(TextIndex.tokenize(query), 1.0, (document, score) -> scores.merge(document, score, Double::sum));
+        return scores;
+    }
+
+    // Matching documents, best first
+    private List<Long> rank(String query) {
+        Map<Long, Double> scores = scores(index, query);
+        List<Long> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        return ranked;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+}
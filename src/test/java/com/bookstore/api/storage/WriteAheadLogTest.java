@@ -0,0 +1,166 @@
+package com.bookstore.api.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Segment files written by the log and read back by replay, including logs cut short by a crash
+public class WriteAheadLogTest {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayReturnsRecordsInOrderWithTheirSequences() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        appendAll(dir, "first", "second", "third");
+
+        List<String> payloads = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        WriteAheadLog.Recovery recovery = WriteAheadLog.replay(dir, 0, (record, sequence) -> {
+            payloads.add(text(record));
+            sequences.add(sequence);
+        });
+
+        assertEquals(Arrays.asList("first", "second", "third"), payloads);
+        assertEquals(Arrays.asList(1L, 2L, 3L), sequences);
+        assertEquals(3, recovery.lastSequence);
+        assertEquals(3, recovery.replayed);
+    }
+
+    @Test
+    public void replaySkipsRecordsUpToTheGivenSequence() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        appendAll(dir, "first", "second", "third");
+
+        assertEquals(Arrays.asList("third"), replayAll(dir, 2));
+    }
+
+    @Test
+    public void corruptLastRecordEndsReplay() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        appendAll(dir, "first", "second", "third");
+
+        // Flip one payload byte of the last record, so its checksum no longer matches
+        int last = WriteAheadLog.HEADER_BYTES * 2 + "first".length() + "second".length();
+        try (FileChannel channel = FileChannel.open(segment(dir, 1), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            channel.read(oneByte, last + WriteAheadLog.HEADER_BYTES);
+            oneByte.put(0, (byte) (oneByte.get(0) ^ 0x20)).rewind();
+            channel.write(oneByte, last + WriteAheadLog.HEADER_BYTES);
+        }
+
+        assertEquals(Arrays.asList("first", "second"), replayAll(dir, 0));
+    }
+
+    @Test
+    public void tornLastRecordEndsReplay() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        appendAll(dir, "first", "second", "third");
+
+        // The crash hit while the last record was being written: its header is there, half its payload is not
+        int last = WriteAheadLog.HEADER_BYTES * 2 + "first".length() + "second".length();
+        try (FileChannel channel = FileChannel.open(segment(dir, 1), StandardOpenOption.WRITE)) {
+            channel.truncate(last + WriteAheadLog.HEADER_BYTES + 2);
+        }
+
+        WriteAheadLog.Recovery recovery = WriteAheadLog.replay(dir, 0, (record, sequence) -> { });
+        assertEquals(Arrays.asList("first", "second"), replayAll(dir, 0));
+        assertEquals(2, recovery.lastSequence);
+    }
+
+    @Test
+    public void rolloverKeepsReplayOrderAcrossSegments() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        WriteAheadLog log = open(dir, 0, 1);
+        log.append(bytes("before")).join();
+        long next = log.rollover().join();
+        log.append(bytes("after")).join();
+        log.close();
+
+        assertEquals(2, next);
+        assertEquals(Arrays.asList("before", "after"), replayAll(dir, 0));
+
+        log.deleteSegmentsBefore(next);
+        WriteAheadLog.Recovery recovery = WriteAheadLog.replay(dir, 0, (record, sequence) -> { });
+        assertEquals(Arrays.asList("after"), replayAll(dir, 0));
+        assertEquals(3, recovery.nextSegmentIndex);
+    }
+
+    @Test
+    public void recordLargerThanASegmentGetsASegmentOfItsOwn() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        char[] large = new char[SEGMENT_BYTES * 2];
+        Arrays.fill(large, 'x');
+        appendAll(dir, "small", new String(large), "tail");
+
+        List<String> payloads = replayAll(dir, 0);
+        assertEquals(3, payloads.size());
+        assertEquals(large.length, payloads.get(1).length());
+        assertEquals("tail", payloads.get(2));
+    }
+
+    @Test
+    public void appendAfterCloseFailsInsteadOfWaiting() throws Exception {
+        WriteAheadLog log = open(folder.getRoot().toPath(), 0, 1);
+        log.close();
+
+        assertTrue(log.isClosed());
+        CompletableFuture<Void> written = log.append(bytes("late"));
+        try {
+            written.join();
+            fail("Append after close completed");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private WriteAheadLog open(Path dir, long lastSequence, long segmentIndex) {
+        PersistenceConfig config = new PersistenceConfig(dir, FsyncPolicy.PER_WRITE, 10, SEGMENT_BYTES, 3600);
+        return new WriteAheadLog(config, lastSequence, segmentIndex);
+    }
+
+    private void appendAll(Path dir, String... payloads) {
+        WriteAheadLog log = open(dir, 0, 1);
+        for (String payload : payloads) {
+            log.append(bytes(payload)).join();
+        }
+        log.close();
+    }
+
+    private static List<String> replayAll(Path dir, long afterSequence) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        WriteAheadLog.replay(dir, afterSequence, (record, sequence) -> payloads.add(text(record)));
+        return payloads;
+    }
+
+    private static Path segment(Path dir, long index) {
+        return dir.resolve(String.format("wal-%016d.log", index));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(ByteBuffer record) {
+        byte[] bytes = new byte[record.remaining()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}